@@ -0,0 +1,431 @@
+package medicalimageviewer;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import medicalimageviewer.models.Reconstruction;
+import medicalimageviewer.models.Study;
+
+/**
+ * Batch Renderer renders series of a list of studies to PNG files without
+ * opening a window, for pre-processing jobs.
+ *
+ * A few studies are open at a time, each rendered on its own thread, while
+ * the slices of every open study are rendered and encoded on a shared pool.
+ * Memory stays bounded: only the studies being rendered are open, and
+ * opening a study copies each slice into its volume as it is decoded, so
+ * the heap holds the decoded slices the cache budget allows, split between
+ * the open studies, plus about one slice per loading thread. The volumes
+ * themselves are mapped from volume files rather than held on the heap, and
+ * a slice task only holds the image it is writing.
+ *
+ * Each series is written to [output]/[study]/[series]/[index].png, where
+ * [study] is the name of the study directory, numbered if several studies
+ * share a name. The volume file of a study is kept in [output]/[study] as
+ * well, so the study directories are only read, and a second run over the
+ * same studies does not decode them again.
+ *
+ * @author Jeffrey Haines
+ */
+public class BatchRenderer {
+    private static final String USAGE =
+              "usage: BatchRenderer [options] study...\n"
+            + "  -o dir      output directory (default: batch)\n"
+            + "  -r spec,... series to render (default: sagittal,coronal)\n"
+            + "              axial, sagittal, coronal, quad or window:MIN:MAX[:AXIS]\n"
+            + "              where AXIS is axial, sagittal or coronal (default: axial)\n"
+            + "  -j n        studies rendered at a time (default: 2)\n"
+            + "  -t n        threads rendering slices (default: processors)\n"
+            + "  -m mb       megabytes of decoded slices kept, split between the open\n"
+            + "              studies (default: 256); volumes are mapped from files in\n"
+            + "              the output directory and are not counted";
+
+    private final File output;
+    private final List<Series> series;
+    private final int studies;      // studies open at a time
+    private final int threads;      // slice rendering threads
+    private final long cacheBudget; // decoded image bytes per open study
+
+    /**
+     * Batch Renderer.
+     * @param output the directory the series are written to
+     * @param series the series to render for every study
+     * @param studies the number of studies to render at a time
+     * @param threads the number of threads rendering slices
+     * @param memory the bytes of decoded images to keep, split between
+     *        the open studies
+     * @author Jeffrey Haines
+     */
+    public BatchRenderer(File output, List<Series> series, int studies, int threads, long memory) {
+        this.output = output;
+        this.series = series;
+        this.studies = studies;
+        this.threads = threads;
+        this.cacheBudget = memory / studies;
+    }
+
+    /**
+     * Renders the series of some studies from the command line and reports
+     * the throughput.
+     * @param args the options and study directories, see USAGE
+     * @author Jeffrey Haines
+     */
+    public static void main(String args[]) {
+        System.setProperty("java.awt.headless", "true");
+
+        File output = new File("batch");
+        List<Series> series = new ArrayList<>();
+        int studies = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long memory = 256L << 20;
+        List<File> dirs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-o"))
+                    output = new File(value(args, ++i));
+                else if (arg.equals("-r"))
+                    for (String spec : value(args, ++i).split(","))
+                        series.add(Series.parse(spec));
+                else if (arg.equals("-j"))
+                    studies = positive(value(args, ++i));
+                else if (arg.equals("-t"))
+                    threads = positive(value(args, ++i));
+                else if (arg.equals("-m"))
+                    memory = (long) positive(value(args, ++i)) << 20;
+                else if (arg.startsWith("-"))
+                    throw new IllegalArgumentException("unknown option " + arg);
+                else
+                    dirs.add(new File(arg));
+            }
+            if (dirs.isEmpty())
+                throw new IllegalArgumentException("no study given");
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (series.isEmpty()) {
+            series.add(Series.parse("sagittal"));
+            series.add(Series.parse("coronal"));
+        }
+
+        BatchRenderer renderer = new BatchRenderer(output, series,
+                    Math.min(studies, dirs.size()), threads, memory);
+        long start = System.nanoTime();
+        int[] result = renderer.render(dirs);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.ROOT,
+                "%d studies, %d slices in %.2f s (%.1f slices/s), %d failed",
+                dirs.size() - result[1], result[0], seconds, result[0] / seconds, result[1]));
+        System.exit(result[1] == 0 ? 0 : 1);
+    }
+
+    /**
+     * Renders every series of some studies, reporting each study as it
+     * finishes.
+     * @param dirs the study directories
+     * @return the number of slices written and the number of studies that
+     *         failed
+     * @author Jeffrey Haines
+     */
+    public int[] render(List<File> dirs) {
+        final List<String> names = uniqueNames(dirs);
+        ExecutorService studyPool = Executors.newFixedThreadPool(studies, daemons("miv-batch-study-"));
+        ExecutorService slicePool = Executors.newFixedThreadPool(threads, daemons("miv-batch-slice-"));
+        try {
+            List<Future<Integer>> done = new ArrayList<>(dirs.size());
+            for (int i = 0; i < dirs.size(); i++) {
+                final File dir = dirs.get(i);
+                final String name = names.get(i);
+                done.add(studyPool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return render(dir, name, slicePool);
+                    }
+                }));
+            }
+
+            int[] result = new int[2];
+            for (int i = 0; i < dirs.size(); i++) {
+                try {
+                    result[0] += done.get(i).get();
+                } catch (ExecutionException ex) {
+                    result[1]++;
+                    System.err.println(dirs.get(i) + ": " + ex.getCause());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    result[1] += dirs.size() - i;
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            studyPool.shutdownNow();
+            slicePool.shutdownNow();
+        }
+    }
+
+    /**
+     * Names the output directory of each study after its study directory,
+     * numbering the second and later studies that share a name.
+     * @param dirs the study directories
+     * @return the name of each study's output directory
+     * @author Jeffrey Haines
+     */
+    static List<String> uniqueNames(List<File> dirs) {
+        List<String> names = new ArrayList<>(dirs.size());
+        HashSet<String> used = new HashSet<>();
+        for (File dir : dirs) {
+            String name = dir.getAbsoluteFile().getName();
+            for (int n = 2; !used.add(name); n++)
+                name = dir.getAbsoluteFile().getName() + "_" + n;
+            names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * Renders every series of one study, one series at a time with its
+     * slices in parallel.
+     * @param dir the study directory
+     * @param name the name of the study's output directory
+     * @param slicePool the pool rendering the slices
+     * @return the number of slices written
+     * @throws Exception if the study could not be opened or a slice could
+     *         not be written
+     * @author Jeffrey Haines
+     */
+    private int render(File dir, String name, ExecutorService slicePool) throws Exception {
+        long start = System.nanoTime();
+        if (!dir.isDirectory())
+            throw new IOException("not a directory");
+        File studyOutput = new File(output, name);
+        if (!studyOutput.isDirectory() && !studyOutput.mkdirs())
+            throw new IOException("could not create " + studyOutput);
+        Study study = new Study(cacheBudget);
+        study.setVolumeDirectory(studyOutput);
+        if (study.open(dir) == null) {
+            studyOutput.delete();   // only if nothing was written to it
+            throw new IOException("could not open study: " + study.getLoadError());
+        }
+        if (!study.getLoadFailures().isEmpty())
+            throw new IOException("could not read " + study.getLoadFailures());
+        final Reconstruction rec = study.getRec();
+
+        int count = 0;
+        for (final Series s : series) {
+            final File target = new File(studyOutput, s.getName());
+            if (!target.isDirectory() && !target.mkdirs())
+                throw new IOException("could not create " + target);
+
+            int size = s.size(rec);
+            List<Callable<Void>> tasks = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final int index = i;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        File file = new File(target, String.format(Locale.ROOT, "%04d.png", index));
+                        if (!ImageIO.write(s.render(rec, index), "png", file))
+                            throw new IOException("no PNG writer");
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> f : slicePool.invokeAll(tasks))
+                f.get();
+            count += size;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%s: %d slices in %.2f s (%.1f slices/s)",
+                name, count, seconds, count / seconds));
+        return count;
+    }
+
+    /**
+     * Gets the value of an option.
+     * @param args the command line
+     * @param i the position of the value
+     * @return the value
+     * @author Jeffrey Haines
+     */
+    private static String value(String[] args, int i) {
+        if (i >= args.length)
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        return args[i];
+    }
+
+    /**
+     * Parses a positive number.
+     * @param value the number
+     * @return the number
+     * @author Jeffrey Haines
+     */
+    private static int positive(String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0)
+                return n;
+        } catch (NumberFormatException ex) {
+        }
+        throw new IllegalArgumentException("not a positive number: " + value);
+    }
+
+    /**
+     * Creates daemon threads named after a pool.
+     * @param name the prefix of the thread names
+     * @return the thread factory
+     * @author Jeffrey Haines
+     */
+    private static ThreadFactory daemons(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * A series of images to render from every study.
+     */
+    public static final class Series {
+        private final String name;
+        private final char axis;    // 'x' sagittal, 'y' coronal, 'z' axial
+        private final boolean quad; // four axial slices to an image
+        private final boolean window;
+        private final int min;
+        private final int max;
+
+        /**
+         * Series.
+         * @param name the name of the series directory
+         * @param axis the axis the slices are taken along
+         * @param quad whether four slices are rendered to each image
+         * @param window whether the slices are windowed
+         * @param min the window minimum, as a grey value of the study
+         * @param max the window maximum, as a grey value of the study
+         * @author Jeffrey Haines
+         */
+        private Series(String name, char axis, boolean quad, boolean window, int min, int max) {
+            this.name = name;
+            this.axis = axis;
+            this.quad = quad;
+            this.window = window;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Parses a series from the command line.
+         * @param spec axial, sagittal, coronal, quad or window:MIN:MAX[:AXIS]
+         * @return the series
+         * @throws IllegalArgumentException if spec is not a series
+         * @author Jeffrey Haines
+         */
+        public static Series parse(String spec) {
+            String[] parts = spec.trim().split(":");
+            if (parts.length == 1 && parts[0].equals("quad"))
+                return new Series("quad", 'z', true, false, 0, 0);
+            if (parts.length == 1)
+                return new Series(parts[0], axis(parts[0], spec), false, false, 0, 0);
+            if (parts[0].equals("window") && (parts.length == 3 || parts.length == 4)) {
+                try {
+                    int min = Integer.parseInt(parts[1]);
+                    int max = Integer.parseInt(parts[2]);
+                    String plane = parts.length == 4 ? parts[3] : "axial";
+                    if (min >= 0 && max > min)
+                        return new Series("window_" + min + "_" + max + "_" + plane,
+                                axis(plane, spec), false, true, min, max);
+                } catch (NumberFormatException ex) {
+                }
+            }
+            throw new IllegalArgumentException("not a series: " + spec);
+        }
+
+        /**
+         * Gets the axis of a plane.
+         * @param plane axial, sagittal or coronal
+         * @param spec the series, for the error message
+         * @return the axis
+         * @author Jeffrey Haines
+         */
+        private static char axis(String plane, String spec) {
+            switch (plane) {
+                case "axial":       return 'z';
+                case "sagittal":    return 'x';
+                case "coronal":     return 'y';
+                default:            throw new IllegalArgumentException("not a series: " + spec);
+            }
+        }
+
+        /**
+         * Gets the name of the series directory.
+         * @return the name
+         * @author Jeffrey Haines
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of images in the series of a study.
+         * @param rec the reconstruction of the study
+         * @return the number of images
+         * @author Jeffrey Haines
+         */
+        int size(Reconstruction rec) {
+            int slices = axis == 'x' ? rec.getXDims() : axis == 'y' ? rec.getYDims() : rec.getZDims();
+            return quad ? (slices + 3) / 4 : slices;
+        }
+
+        /**
+         * Renders one image of the series.
+         * @param rec the reconstruction of the study
+         * @param index the index of the image
+         * @return the image
+         * @author Jeffrey Haines
+         */
+        BufferedImage render(Reconstruction rec, int index) {
+            if (window)
+                return rec.window(axis, index, min, max);
+            if (!quad)
+                return rec.construct2D(axis, index);
+
+            // the four slices of the page, laid out as in the quad view
+            int w = rec.getXDims();
+            int h = rec.getYDims();
+            BufferedImage page = new BufferedImage(2 * w, 2 * h, BufferedImage.TYPE_INT_RGB);
+            BufferedImage tile = null;
+            Graphics g = page.createGraphics();
+            try {
+                for (int i = 0; i < 4 && 4 * index + i < rec.getZDims(); i++) {
+                    tile = rec.construct2D('z', 4 * index + i, tile);
+                    g.drawImage(tile, (i % 2) * w, (i / 2) * h, null);
+                }
+            } finally {
+                g.dispose();
+            }
+            return page;
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package medicalimageviewer.IndexDecorator;
 
 import java.awt.Color;
+import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 
 /**
  * This is the class IndexDecorator, this allows lines on the image which 
  * tells the user where they are while scrolling through a reconstruction
+ * 
+ * The draw methods write the lines into the image itself. The paint methods
+ * paint them over the image instead, so shared images are left untouched.
  *
  * @author Jeffrey Haines
  */
@@ -62,4 +66,40 @@ public class IndexDecorator {
         }
         return pic;
     }
+    
+    /**
+     * Paints both lines over an image, like draw without changing it
+     * @param g the graphics to paint with, in the coordinates of the image
+     * @param width the width of the image
+     * @param height the height of the image
+     * @author Jeffrey Haines
+     */
+    public void paint(Graphics g, int width, int height){
+        paintSag(g, height);
+        paintCor(g, width);
+    }
+    
+    /**
+     * Paints the sagittal line over an image, like drawSag without
+     * changing it
+     * @param g the graphics to paint with, in the coordinates of the image
+     * @param height the height of the image
+     * @author Jeffrey Haines
+     */
+    public void paintSag(Graphics g, int height){
+        g.setColor(Color.blue);
+        g.fillRect(sagIndex, 0, 1, height);
+    }
+    
+    /**
+     * Paints the coronal line over an image, like drawCor without
+     * changing it
+     * @param g the graphics to paint with, in the coordinates of the image
+     * @param width the width of the image
+     * @author Jeffrey Haines
+     */
+    public void paintCor(Graphics g, int width){
+        g.setColor(Color.red);
+        g.fillRect(0, corIndex, width, 1);
+    }
 }
@@ -0,0 +1,41 @@
+package medicalimageviewer.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks runs the JMH benchmarks of the viewer, taking the usual JMH
+ * command line. The gc profiler is always added, so every result reports
+ * the allocation rate and the bytes allocated per operation next to the
+ * time taken.
+ *
+ * @author Jeffrey Haines
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     * @param args JMH options, e.g. a benchmark name pattern or -p size=512
+     * @throws Exception if the options are wrong or the run fails
+     * @author Jeffrey Haines
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .parent(options)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("-Djava.awt.headless=true")
+                .build()).run();
+    }
+}
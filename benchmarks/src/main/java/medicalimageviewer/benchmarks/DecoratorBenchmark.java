@@ -0,0 +1,81 @@
+package medicalimageviewer.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import medicalimageviewer.IndexDecorator.IndexDecorator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Marking the sagittal and coronal index lines on an axial slice, written
+ * into the image by draw or painted over it by paint.
+ *
+ * @author Jeffrey Haines
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoratorBenchmark {
+    @Param({"256", "512"})
+    public int size;
+
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private IndexDecorator decorator;
+
+    /**
+     * Creates the slice and the decorator.
+     * @author Jeffrey Haines
+     */
+    @Setup(Level.Trial)
+    public void createSlice() {
+        image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+        decorator = new IndexDecorator(size / 2, size / 3);
+    }
+
+    /**
+     * Releases the graphics.
+     * @author Jeffrey Haines
+     */
+    @TearDown(Level.Trial)
+    public void dispose() {
+        graphics.dispose();
+    }
+
+    /**
+     * IndexDecorator.draw
+     * @return the decorated slice
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage draw() {
+        return decorator.draw(image);
+    }
+
+    /**
+     * IndexDecorator.paint
+     * @return the slice painted on
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage paint() {
+        decorator.paint(graphics, size, size);
+        return image;
+    }
+}
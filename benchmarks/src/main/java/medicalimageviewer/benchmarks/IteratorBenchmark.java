@@ -0,0 +1,142 @@
+package medicalimageviewer.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import medicalimageviewer.models.Study;
+import medicalimageviewer.models.iterator.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Getting the images of each view's iterator from an open study: showing
+ * the current images again, and scrolling one step before getting them,
+ * wrapping around at the end of the study.
+ *
+ * The sagittal and coronal views take their slices from the
+ * reconstruction's SliceCache. In getImages and getImagesInto the slice is
+ * rendered once and then always found in the cache, and in scroll it has
+ * usually been prefetched on the cache's own thread, whose time is not
+ * counted. Those results measure cache hits. getImagesUncached empties the
+ * cache before every call and runs without prefetching, so it measures
+ * rendering the slice.
+ *
+ * @author Jeffrey Haines
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IteratorBenchmark {
+    @Param({"64"})
+    public int slices;
+
+    @Param({"256", "512"})
+    public int size;
+
+    @Param({"single", "quad", "window", "sagittal", "coronal"})
+    public String view;
+
+    private File dir;
+    private Study study;
+    private StudyImageIterator it;
+    private final BufferedImage[] set = new BufferedImage[4];
+
+    /**
+     * Writes and opens the study, and creates the iterator of the view.
+     * @param params the benchmark about to run
+     * @throws IOException if the study could not be written
+     * @author Jeffrey Haines
+     */
+    @Setup(Level.Trial)
+    public void openStudy(BenchmarkParams params) throws IOException {
+        dir = SyntheticStudy.create(SyntheticStudy.ACR, slices, size);
+        study = new Study();
+        study.open(dir);
+        if (params.getBenchmark().endsWith("Uncached"))
+            study.getRec().getSliceCache().setDepth(0);
+        switch (view) {
+            case "single":      it = new SingleImageIterator(slices / 2);
+                                break;
+            case "quad":        it = new QuadImageIterator(slices / 2);
+                                break;
+            case "window":      it = new WindowImageIterator(slices / 2, 500, 1500);
+                                break;
+            case "sagittal":    it = new SagImageIterator(study, size / 2);
+                                break;
+            case "coronal":     it = new CorImageIterator(study, size / 2);
+                                break;
+            default:            throw new IllegalArgumentException(view);
+        }
+    }
+
+    /**
+     * Deletes the study.
+     * @throws IOException if the study could not be deleted
+     * @author Jeffrey Haines
+     */
+    @TearDown(Level.Trial)
+    public void deleteStudy() throws IOException {
+        SyntheticStudy.delete(dir);
+    }
+
+    /**
+     * StudyImageIterator.getImages
+     * @return the images
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage[] getImages() {
+        return it.getImages(study);
+    }
+
+    /**
+     * StudyImageIterator.getImages into the array of the last call
+     * @return the images
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage[] getImagesInto() {
+        return it.getImages(study, set);
+    }
+
+    /**
+     * StudyImageIterator.getImages into the array of the last call, after
+     * emptying the slice cache
+     * @return the images
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage[] getImagesUncached() {
+        study.getRec().getSliceCache().clear();
+        return it.getImages(study, set);
+    }
+
+    /**
+     * StudyImageIterator.next, then getImages into the array of the last
+     * call
+     * @return the images
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage[] scroll() {
+        if (!it.next(study))
+            it.setIndex(0);
+        return it.getImages(study, set);
+    }
+}
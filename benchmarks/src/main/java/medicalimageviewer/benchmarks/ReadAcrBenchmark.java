@@ -0,0 +1,72 @@
+package medicalimageviewer.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import medicalimageviewer.models.Study;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading one ACR slice file: the bulk read, the header and the unpacking
+ * of the samples.
+ *
+ * @author Jeffrey Haines
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadAcrBenchmark {
+    @Param({"256", "512"})
+    public int size;
+
+    private File dir;
+    private File slice;
+
+    /**
+     * Writes a one slice study.
+     * @throws IOException if the study could not be written
+     * @author Jeffrey Haines
+     */
+    @Setup(Level.Trial)
+    public void createSlice() throws IOException {
+        dir = SyntheticStudy.create(SyntheticStudy.ACR, 1, size);
+        slice = new File(dir, "1." + SyntheticStudy.ACR);
+    }
+
+    /**
+     * Deletes the study.
+     * @throws IOException if the study could not be deleted
+     * @author Jeffrey Haines
+     */
+    @TearDown(Level.Trial)
+    public void deleteSlice() throws IOException {
+        SyntheticStudy.delete(dir);
+    }
+
+    /**
+     * Study.readACR
+     * @return the slice
+     * @throws IOException if the slice could not be read
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage readACR() throws IOException {
+        return Study.readACR(slice);
+    }
+}
@@ -0,0 +1,59 @@
+package medicalimageviewer.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import medicalimageviewer.models.Reconstruction;
+import medicalimageviewer.models.StudyImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the volume of a study from slices already in memory, which is
+ * what create3d does for the public Reconstruction constructor.
+ *
+ * @author Jeffrey Haines
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReconstructionBenchmark {
+    @Param({"64"})
+    public int slices;
+
+    @Param({"256", "512"})
+    public int size;
+
+    private List<StudyImage> images;
+
+    /**
+     * Creates the slices.
+     * @author Jeffrey Haines
+     */
+    @Setup(Level.Trial)
+    public void createSlices() {
+        images = SyntheticStudy.images(slices, size);
+    }
+
+    /**
+     * Reconstruction.create3d
+     * @return the reconstruction
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public Reconstruction create3d() {
+        return new Reconstruction(images);
+    }
+}
@@ -0,0 +1,99 @@
+package medicalimageviewer.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import medicalimageviewer.models.Reconstruction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering one 2D slice of the volume along each axis, as a plain grey
+ * image and windowed. The "Into" variants draw into the image of the last
+ * call, as the viewer does, and should not allocate.
+ *
+ * @author Jeffrey Haines
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SliceBenchmark {
+    private static final int MIN = 500;     // window used by the window benchmarks
+    private static final int MAX = 1500;
+
+    @Param({"64"})
+    public int slices;
+
+    @Param({"256", "512"})
+    public int size;
+
+    // x sagittal, y coronal, z axial
+    @Param({"x", "y", "z"})
+    public char axis;
+
+    private Reconstruction rec;
+    private int index;
+    private BufferedImage target;
+
+    /**
+     * Builds the volume.
+     * @author Jeffrey Haines
+     */
+    @Setup(Level.Trial)
+    public void createVolume() {
+        rec = new Reconstruction(SyntheticStudy.images(slices, size));
+        index = (axis == 'z' ? slices : size) / 2;
+    }
+
+    /**
+     * Reconstruction.construct2D
+     * @return the slice
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage construct2D() {
+        return rec.construct2D(axis, index);
+    }
+
+    /**
+     * Reconstruction.construct2D into the image of the last call
+     * @return the slice
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage construct2DInto() {
+        return target = rec.construct2D(axis, index, target);
+    }
+
+    /**
+     * Reconstruction.window
+     * @return the windowed slice
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage window() {
+        return rec.window(axis, index, MIN, MAX);
+    }
+
+    /**
+     * Reconstruction.window into the image of the last call
+     * @return the windowed slice
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public BufferedImage windowInto() {
+        return target = rec.window(axis, index, MIN, MAX, target);
+    }
+}
@@ -0,0 +1,94 @@
+package medicalimageviewer.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import medicalimageviewer.models.Study;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Opening a study: listing and decoding its slices and building the
+ * volume, or mapping the volume file kept by an earlier open.
+ *
+ * @author Jeffrey Haines
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StudyBenchmark {
+    @Param({"jpeg", "acr"})
+    public String format;
+
+    @Param({"64"})
+    public int slices;
+
+    @Param({"256", "512"})
+    public int size;
+
+    // whether the volume file of the last open is there to be reused
+    @Param({"false", "true"})
+    public boolean volumeFile;
+
+    private File dir;
+
+    /**
+     * Writes the study, and its volume file when it is to be reused.
+     * @throws IOException if the study could not be written
+     * @author Jeffrey Haines
+     */
+    @Setup(Level.Trial)
+    public void createStudy() throws IOException {
+        dir = SyntheticStudy.create(format, slices, size);
+        if (volumeFile)
+            new Study().open(dir);
+    }
+
+    /**
+     * Removes the volume file before each open that must build the volume.
+     * @throws IOException if the file could not be removed
+     * @author Jeffrey Haines
+     */
+    @Setup(Level.Invocation)
+    public void removeVolume() throws IOException {
+        if (!volumeFile)
+            SyntheticStudy.delete(new File(dir, dir.getName() + ".vol"));
+    }
+
+    /**
+     * Deletes the study.
+     * @throws IOException if the study could not be deleted
+     * @author Jeffrey Haines
+     */
+    @TearDown(Level.Trial)
+    public void deleteStudy() throws IOException {
+        SyntheticStudy.delete(dir);
+    }
+
+    /**
+     * Study.open
+     * @return the opened study
+     * @author Jeffrey Haines
+     */
+    @Benchmark
+    public Study open() {
+        Study study = new Study();
+        if (study.open(dir) == null)
+            throw new IllegalStateException("could not open " + dir);
+        return study;
+    }
+}
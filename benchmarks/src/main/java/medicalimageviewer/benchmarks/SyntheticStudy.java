@@ -0,0 +1,179 @@
+package medicalimageviewer.benchmarks;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+import medicalimageviewer.models.StudyImage;
+
+/**
+ * The SyntheticStudy class writes studies of any size for the benchmarks to
+ * open, so results do not depend on patient data.
+ *
+ * Every slice shows a cross section of a sphere whose intensity falls off
+ * from the centre, over a faint texture, much like the soft tissue and bone
+ * of a real scan. ACR slices hold 12 bit samples behind a little endian
+ * ACR-NEMA header; JPEG slices hold the top 8 bits of the same values.
+ *
+ * @author Jeffrey Haines
+ */
+public final class SyntheticStudy {
+    static final String JPEG = "jpeg";
+    static final String ACR = "acr";
+
+    private SyntheticStudy() {
+    }
+
+    /**
+     * Writes a study into a new temporary directory.
+     * @param format JPEG or ACR
+     * @param slices the number of slices
+     * @param size the width and height of a slice
+     * @return the study directory
+     * @throws IOException if the study could not be written
+     * @author Jeffrey Haines
+     */
+    static File create(String format, int slices, int size) throws IOException {
+        File dir = Files.createTempDirectory("miv-" + format + "-" + slices + "x" + size + "-").toFile();
+        for (int z = 0; z < slices; z++) {
+            File file = new File(dir, (z + 1) + "." + format);
+            if (format.equals(ACR))
+                Files.write(file.toPath(), acr(z, slices, size));
+            else if (!ImageIO.write(slice(z, slices, size, 8), "jpeg", file))
+                throw new IOException("no JPEG writer");
+        }
+        return dir;
+    }
+
+    /**
+     * Creates the slices of a study in memory.
+     * @param slices the number of slices
+     * @param size the width and height of a slice
+     * @return the study images, held in memory
+     * @author Jeffrey Haines
+     */
+    static List<StudyImage> images(int slices, int size) {
+        List<StudyImage> images = new ArrayList<>(slices);
+        for (int z = 0; z < slices; z++)
+            images.add(new StudyImage((z + 1) + "." + ACR, new int[] {size, size},
+                    slice(z, slices, size, 12)));
+        return images;
+    }
+
+    /**
+     * Creates one slice as a grey image.
+     * @param z the index of the slice
+     * @param slices the number of slices
+     * @param size the width and height of the slice
+     * @param bits 8 for a byte image, otherwise 12 bit samples in a ushort
+     *        image whose colour model declares 12 bits, as readACR makes
+     *        them
+     * @return the slice
+     * @author Jeffrey Haines
+     */
+    static BufferedImage slice(int z, int slices, int size, int bits) {
+        BufferedImage image;
+        if (bits == 8) {
+            image = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+        } else {
+            ColorModel model = new ComponentColorModel(
+                    ColorSpace.getInstance(ColorSpace.CS_GRAY), new int[] {12},
+                    false, false, Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+            image = new BufferedImage(model,
+                    model.createCompatibleWritableRaster(size, size), false, null);
+        }
+        WritableRaster raster = image.getRaster();
+        for (int y = 0; y < size; y++)
+            for (int x = 0; x < size; x++)
+                raster.setSample(x, y, 0, bits == 8 ? value(x, y, z, slices, size) >> 4
+                                                    : value(x, y, z, slices, size));
+        return image;
+    }
+
+    /**
+     * Creates the contents of one ACR slice file.
+     * @param z the index of the slice
+     * @param slices the number of slices
+     * @param size the width and height of the slice
+     * @return the file contents
+     * @author Jeffrey Haines
+     */
+    static byte[] acr(int z, int slices, int size) {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        element(header, 0x0008, 0x0010, "ACR-NEMA 2.0".getBytes());
+        element(header, 0x0028, 0x0010, le16(size));
+        element(header, 0x0028, 0x0011, le16(size));
+        element(header, 0x0028, 0x0100, le16(16));
+        element(header, 0x0028, 0x0101, le16(12));
+        element(header, 0x0028, 0x0102, le16(11));
+        ByteBuffer file = ByteBuffer.allocate(header.size() + 8 + 2 * size * size)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        file.put(header.toByteArray());
+        file.putShort((short) 0x7FE0).putShort((short) 0x0010).putInt(2 * size * size);
+        for (int y = 0; y < size; y++)
+            for (int x = 0; x < size; x++)
+                file.putShort((short) value(x, y, z, slices, size));
+        return file.array();
+    }
+
+    /**
+     * Deletes a study written by create, with everything the viewer stored
+     * next to it.
+     * @param dir the study directory or one of its files, or null
+     * @throws IOException if the study could not be deleted
+     * @author Jeffrey Haines
+     */
+    static void delete(File dir) throws IOException {
+        if (dir == null || !dir.exists())
+            return;
+        File[] files = dir.listFiles();
+        if (files != null)
+            for (File f : files)
+                delete(f);
+        Files.delete(dir.toPath());
+    }
+
+    /**
+     * Gets the 12 bit intensity of a voxel.
+     * @author Jeffrey Haines
+     */
+    private static int value(int x, int y, int z, int slices, int size) {
+        double dx = x - size / 2.0;
+        double dy = y - size / 2.0;
+        double dz = (z - slices / 2.0) * size / slices;
+        double r = Math.sqrt(dx * dx + dy * dy + dz * dz) / (size * 0.4);
+        return r < 1 ? (int) (4095 * (1 - r)) : (x * 7 + y * 3) & 0xFF;
+    }
+
+    /**
+     * Writes one element of a little endian ACR-NEMA header.
+     * @author Jeffrey Haines
+     */
+    private static void element(ByteArrayOutputStream out, int group, int element, byte[] value) {
+        out.write(le16(group), 0, 2);
+        out.write(le16(element), 0, 2);
+        out.write(new byte[] {(byte) value.length, (byte) (value.length >> 8),
+                              (byte) (value.length >> 16), (byte) (value.length >> 24)}, 0, 4);
+        out.write(value, 0, value.length);
+    }
+
+    /**
+     * Encodes a little endian 16 bit value.
+     * @author Jeffrey Haines
+     */
+    private static byte[] le16(int v) {
+        return new byte[] {(byte) v, (byte) (v >> 8)};
+    }
+}
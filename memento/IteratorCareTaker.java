@@ -1,40 +1,102 @@
 package medicalimageviewer.memento;
 
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Iterator Care Taker
+ * 
+ * Keeps the undo and redo history as one ring of mementos with a cursor
+ * between the changes that can be undone and those that can be redone.
+ * Once the ring is full the oldest change is dropped. Undo and redo only
+ * move the cursor.
  *
  * @author Jeffrey Haines
  */
 public class IteratorCareTaker {
-    private Stack<IteratorMemento> changes;
+    // default number of changes kept
+    public static final int DEFAULT_DEPTH = 256;
+    // default number of bytes the history may use
+    public static final long DEFAULT_BYTES = 64L << 10;
+    
+    private final IteratorMemento[] changes;
+    private int first;  // ring position of the oldest change
+    private int size;   // number of changes held
+    private int cursor; // number of changes that can be undone
     
     /**
      * Iterator Care Taker
      * @author Jeffrey Haines
      */
     public IteratorCareTaker() {
-        changes = new Stack<>();
+        this(DEFAULT_DEPTH, DEFAULT_BYTES);
+    }
+    
+    /**
+     * Iterator Care Taker
+     * @param depth the largest number of changes to keep
+     * @param bytes the largest number of bytes the kept changes may use
+     * @author Jeffrey Haines
+     */
+    public IteratorCareTaker(int depth, long bytes) {
+        changes = new IteratorMemento[(int) Math.max(1, 
+                    Math.min(depth, bytes / IteratorMemento.BYTES))];
     }
     
     /**
      * Push
-     * @param m the list of iterators to be saved
+     * Records a change, dropping every change that could be redone and,
+     * when the history is full, the oldest change
+     * @param m the change
      * @author Jeffrey Haines
      */
     public void push(IteratorMemento m)
     {
-        changes.push(m);
+        for (int i = cursor; i < size; i++)
+            changes[(first + i) % changes.length] = null;
+        size = cursor;
+        if (size == changes.length) {
+            first = (first + 1) % changes.length;
+            size--;
+        }
+        changes[(first + size) % changes.length] = m;
+        cursor = ++size;
+    }
+    
+    /**
+     * Undo
+     * @return the change to undo by restoring its state before, or null if
+     *         there is nothing to undo
+     * @author Jeffrey Haines
+     */
+    public IteratorMemento undo()
+    {
+        if (cursor == 0)
+            return null;
+        cursor--;
+        return changes[(first + cursor) % changes.length];
+    }
+    
+    /**
+     * Redo
+     * @return the change to redo by restoring its state after, or null if
+     *         there is nothing to redo
+     * @author Jeffrey Haines
+     */
+    public IteratorMemento redo()
+    {
+        if (cursor == size)
+            return null;
+        return changes[(first + cursor++) % changes.length];
     }
     
     /**
-     * Pop
-     * @return the list of iterators to be restored
+     * Clear
+     * Forgets every change, such as when another study is opened
      * @author Jeffrey Haines
      */
-    public IteratorMemento pop()
+    public void clear()
     {
-        return changes.pop();
+        Arrays.fill(changes, null);
+        first = size = cursor = 0;
     }
 }
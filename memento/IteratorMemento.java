@@ -1,46 +1,106 @@
 package medicalimageviewer.memento;
 
-import java.util.ArrayList;
-import medicalimageviewer.models.iterator.StudyImageIterator;
-
 /**
  * Iterator Memento
+ * 
+ * One change to the view: the view mode and the position and window of a
+ * single iterator, before and after the change. Mementos never change, so
+ * undoing and redoing only has to read them back.
  *
  * @author Jeffrey Haines
  */
 public class IteratorMemento {
-    ArrayList<StudyImageIterator> it;
-    int mode;
+    // approximate heap size of a memento and its slot in the history
+    static final int BYTES = 64;
+    
+    final int slot;
+    final int fromMode;
+    final int toMode;
+    final int fromIndex;
+    final int toIndex;
+    final int fromMin;
+    final int toMin;
+    final int fromMax;
+    final int toMax;
     
     /**
      * The constructor for the IteratorMemento
-     * @param it An arraylist of StudyImageIterators that will be called within
-     * @param mode An int that specifies the index that a specific iterator is at.
+     * @param slot the position of the changed iterator in the iterator list
+     * @param fromMode the view mode before the change
+     * @param fromIndex the index of the iterator before the change
+     * @param fromMin the window minimum before the change, if it is a window iterator
+     * @param fromMax the window maximum before the change, if it is a window iterator
+     * @param toMode the view mode after the change
+     * @param toIndex the index of the iterator after the change
+     * @param toMin the window minimum after the change, if it is a window iterator
+     * @param toMax the window maximum after the change, if it is a window iterator
      * @author Jeffrey Haines
      */
-    public IteratorMemento(ArrayList<StudyImageIterator> it, int mode)
+    public IteratorMemento(int slot, int fromMode, int fromIndex, int fromMin, int fromMax,
+                           int toMode, int toIndex, int toMin, int toMax)
     {
-        this.it = it;
-        this.mode = mode;
+        this.slot = slot;
+        this.fromMode = fromMode;
+        this.fromIndex = fromIndex;
+        this.fromMin = fromMin;
+        this.fromMax = fromMax;
+        this.toMode = toMode;
+        this.toIndex = toIndex;
+        this.toMin = toMin;
+        this.toMax = toMax;
     }
     
     /**
-     * Get Iterator
-     * @return the list of iterators
+     * Get Slot
+     * @return the position of the changed iterator in the iterator list
      * @author Jeffrey Haines
      */
-    public ArrayList<StudyImageIterator> getIterator()
+    public int getSlot()
     {
-        return it;
+        return slot;
     }
     
     /**
      * Get Mode
+     * @param after true for the view mode after the change, false for before
      * @return the view mode
      * @author Jeffrey Haines
      */
-    public int getMode()
+    public int getMode(boolean after)
+    {
+        return after ? toMode : fromMode;
+    }
+    
+    /**
+     * Get Index
+     * @param after true for the index after the change, false for before
+     * @return the index of the iterator
+     * @author Jeffrey Haines
+     */
+    public int getIndex(boolean after)
+    {
+        return after ? toIndex : fromIndex;
+    }
+    
+    /**
+     * Get Min
+     * @param after true for the window after the change, false for before
+     * @return the window minimum
+     * @author Jeffrey Haines
+     */
+    public int getMin(boolean after)
+    {
+        return after ? toMin : fromMin;
+    }
+    
+    /**
+     * Get Max
+     * @param after true for the window after the change, false for before
+     * @return the window maximum
+     * @author Jeffrey Haines
+     */
+    public int getMax(boolean after)
     {
-        return mode;
+        return after ? toMax : fromMax;
     }
 }
@@ -0,0 +1,241 @@
+package medicalimageviewer.models;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The AcrHeader class reads the ACR-NEMA header of a slice file. The header
+ * is a sequence of group/element tagged values, from which the matrix size,
+ * the sample layout and the position of the pixel data are taken.
+ *
+ * Files that do not start with an ACR-NEMA header are read with the layout
+ * the viewer has always assumed: a 256x256 matrix of big endian 16 bit
+ * words holding 12 bit samples, starting at offset 0x2000. A file that does
+ * start with a header is rejected if the header cannot be parsed, rather
+ * than being read with that layout.
+ *
+ * @author Jeffrey Haines
+ */
+public class AcrHeader {
+    // tags of the values the viewer needs
+    private static final int IMAGE_GROUP = 0x0028;
+    private static final int ROWS = 0x0010;
+    private static final int COLUMNS = 0x0011;
+    private static final int BITS_ALLOCATED = 0x0100;
+    private static final int BITS_STORED = 0x0101;
+    private static final int HIGH_BIT = 0x0102;
+    private static final long PIXEL_DATA = 0x7FE00010L;
+    private static final int IDENTIFYING_GROUP = 0x0008;
+
+    private static final ByteOrder[] ORDERS = {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN};
+
+    private int rows = 256;
+    private int columns = 256;
+    private int bitsAllocated = 16;
+    private int bitsStored = 12;
+    private int highBit = 15;
+    private int pixelOffset = 0x2000;
+    private ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+    private AcrHeader() {
+    }
+
+    /**
+     * Parses the header at the start of an ACR file.
+     * @param file the contents of the file, starting at the header
+     * @return the parsed header, or the legacy layout if there is no header
+     * @throws IOException if there is a header but it cannot be parsed or
+     *         describes pixel data the viewer cannot read
+     * @author Jeffrey Haines
+     */
+    public static AcrHeader parse(ByteBuffer file) throws IOException {
+        ByteOrder order = detectOrder(file);
+        if (order == null)
+            return new AcrHeader();
+        return parse(file, order);
+    }
+
+    /**
+     * Detects the byte order of the header. Headers normally start with the
+     * identifying group 0008, whose number and length only read correctly in
+     * one order. Other headers are recognised by their first two tags being
+     * in ascending order, with lengths that fit the file.
+     * @param file the contents of the file
+     * @return the byte order, or null if the file does not start with a header
+     * @author Jeffrey Haines
+     */
+    static ByteOrder detectOrder(ByteBuffer file) {
+        for (ByteOrder order : ORDERS) {
+            ByteBuffer in = file.duplicate().order(order);
+            if (in.limit() >= 8 && (in.getShort(0) & 0xFFFF) == IDENTIFYING_GROUP
+                    && (in.getInt(4) & 0xFFFFFFFFL) <= in.limit() - 8)
+                return order;
+        }
+        for (ByteOrder order : ORDERS) {
+            ByteBuffer in = file.duplicate().order(order);
+            long first = tagAt(in, 0);
+            if (first <= 0)
+                continue;
+            long next = 8 + (in.getInt(4) & 0xFFFFFFFFL);
+            if (next <= in.limit() - 8 && tagAt(in, (int) next) > first)
+                return order;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the tag of the element at a position, checking that the element's
+     * value lies within the file.
+     * @param in the contents of the file, in the byte order to try
+     * @param at the position of the element
+     * @return the group and element as one number, or -1 if the element does
+     *         not fit
+     * @author Jeffrey Haines
+     */
+    private static long tagAt(ByteBuffer in, int at) {
+        if (at > in.limit() - 8 || (in.getInt(at + 4) & 0xFFFFFFFFL) > in.limit() - at - 8)
+            return -1;
+        return (long) (in.getShort(at) & 0xFFFF) << 16 | (in.getShort(at + 2) & 0xFFFF);
+    }
+
+    /**
+     * Walks the header elements in the given byte order until the pixel data
+     * element is found. Odd, private groups are skipped like any other.
+     * @param file the contents of the file
+     * @param order the byte order of the header
+     * @return the header
+     * @throws IOException if the elements do not parse, or the header lacks
+     *         or has unsupported values
+     * @author Jeffrey Haines
+     */
+    private static AcrHeader parse(ByteBuffer file, ByteOrder order) throws IOException {
+        ByteBuffer in = file.duplicate().order(order);
+        in.position(0);
+
+        AcrHeader header = new AcrHeader();
+        header.order = order;
+        header.rows = 0;
+        header.columns = 0;
+        header.bitsStored = 0;
+        header.highBit = -1;
+
+        long last = -1;
+        while (true) {
+            if (in.remaining() < 8)
+                throw new IOException("ACR header has no pixel data element");
+            int group = in.getShort() & 0xFFFF;
+            int element = in.getShort() & 0xFFFF;
+            long length = in.getInt() & 0xFFFFFFFFL;
+            long tag = (long) group << 16 | element;
+
+            // elements come in ascending tag order
+            if (tag <= last)
+                throw new IOException(String.format(
+                        "ACR header element (%04X,%04X) is out of order", group, element));
+            last = tag;
+
+            if (tag == PIXEL_DATA) {
+                header.pixelOffset = in.position();
+                break;
+            }
+            if (length > in.remaining())
+                throw new IOException(String.format(
+                        "ACR header element (%04X,%04X) runs past the end of the file", group, element));
+            if (group == IMAGE_GROUP && length == 2) {
+                int value = in.getShort(in.position()) & 0xFFFF;
+                switch (element) {
+                    case ROWS:              header.rows = value;
+                                            break;
+                    case COLUMNS:           header.columns = value;
+                                            break;
+                    case BITS_ALLOCATED:    header.bitsAllocated = value;
+                                            break;
+                    case BITS_STORED:       header.bitsStored = value;
+                                            break;
+                    case HIGH_BIT:          header.highBit = value;
+                                            break;
+                }
+            }
+            in.position(in.position() + (int) length);
+        }
+
+        if (header.rows <= 0 || header.columns <= 0)
+            throw new IOException("ACR header has no matrix size");
+        if (header.bitsAllocated != 8 && header.bitsAllocated != 16)
+            throw new IOException("unsupported bits allocated: " + header.bitsAllocated);
+        if (header.bitsStored <= 0)
+            header.bitsStored = header.bitsAllocated;
+        if (header.highBit < 0)
+            header.highBit = header.bitsStored - 1;
+        if (header.bitsStored > header.bitsAllocated
+                || header.highBit >= header.bitsAllocated
+                || header.highBit + 1 < header.bitsStored)
+            throw new IOException("unsupported sample layout: " + header.bitsStored
+                    + " bits stored, high bit " + header.highBit);
+        return header;
+    }
+
+    /**
+     * Gets the number of rows of the image matrix.
+     * @return the height in pixels
+     * @author Jeffrey Haines
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of columns of the image matrix.
+     * @return the width in pixels
+     * @author Jeffrey Haines
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the number of bits each sample occupies in the file, 8 or 16.
+     * @return the bits allocated
+     * @author Jeffrey Haines
+     */
+    public int getBitsAllocated() {
+        return bitsAllocated;
+    }
+
+    /**
+     * Gets the number of significant bits of each sample.
+     * @return the bits stored
+     * @author Jeffrey Haines
+     */
+    public int getBitsStored() {
+        return bitsStored;
+    }
+
+    /**
+     * Gets the position of the most significant bit of a sample.
+     * @return the high bit
+     * @author Jeffrey Haines
+     */
+    public int getHighBit() {
+        return highBit;
+    }
+
+    /**
+     * Gets the offset in the file of the first pixel.
+     * @return the pixel data offset in bytes
+     * @author Jeffrey Haines
+     */
+    public int getPixelOffset() {
+        return pixelOffset;
+    }
+
+    /**
+     * Gets the byte order of the header and the pixel data.
+     * @return the byte order
+     * @author Jeffrey Haines
+     */
+    public ByteOrder getByteOrder() {
+        return order;
+    }
+}
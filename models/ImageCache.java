@@ -0,0 +1,122 @@
+package medicalimageviewer.models;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The ImageCache class keeps the most recently used decoded slices of a
+ * study in memory. Slices are evicted in least recently used order once the
+ * decoded pixel data held by the cache exceeds its byte budget, so only the
+ * slices that were recently viewed stay resident.
+ *
+ * @author Jeffrey Haines
+ */
+public class ImageCache {
+    private final LinkedHashMap<StudyImage, BufferedImage> images;
+    private long budget;    // maximum number of bytes to keep
+    private long bytes;     // bytes currently held
+
+    /**
+     * Image Cache.
+     * @param budget the maximum number of bytes of decoded pixel data to keep
+     * @author Jeffrey Haines
+     */
+    public ImageCache(long budget) {
+        this.images = new LinkedHashMap<>(64, 0.75f, true);
+        this.budget = budget;
+    }
+
+    /**
+     * Gets a cached image and marks it as most recently used.
+     * @param key the study image the decoded image belongs to
+     * @return the decoded image, or null if it is not cached
+     * @author Jeffrey Haines
+     */
+    public synchronized BufferedImage get(StudyImage key) {
+        return images.get(key);
+    }
+
+    /**
+     * Adds a decoded image to the cache, evicting the least recently used
+     * images until the cache is back within its budget. The image being
+     * added is never evicted by its own insertion.
+     * @param key the study image the decoded image belongs to
+     * @param image the decoded image
+     * @author Jeffrey Haines
+     */
+    public synchronized void put(StudyImage key, BufferedImage image) {
+        BufferedImage old = images.put(key, image);
+        if (old != null)
+            bytes -= sizeOf(old);
+        bytes += sizeOf(image);
+        trim(key);
+    }
+
+    /**
+     * Removes every image from the cache.
+     * @author Jeffrey Haines
+     */
+    public synchronized void clear() {
+        images.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Gets the byte budget of the cache.
+     * @return the budget in bytes
+     * @author Jeffrey Haines
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Changes the byte budget of the cache, evicting images if needed.
+     * @param budget the new budget in bytes
+     * @author Jeffrey Haines
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        trim(null);
+    }
+
+    /**
+     * Gets the number of bytes of decoded pixel data currently cached.
+     * @return the cached bytes
+     * @author Jeffrey Haines
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    /**
+     * Evicts least recently used images until the cache fits its budget.
+     * @param keep an image that must not be evicted, or null
+     * @author Jeffrey Haines
+     */
+    private void trim(StudyImage keep) {
+        Iterator<Map.Entry<StudyImage, BufferedImage>> it = images.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            Map.Entry<StudyImage, BufferedImage> eldest = it.next();
+            if (eldest.getKey() == keep)
+                continue;
+            bytes -= sizeOf(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Estimates the memory held by the pixel data of an image.
+     * @param image the image
+     * @return the size in bytes
+     * @author Jeffrey Haines
+     */
+    static long sizeOf(BufferedImage image) {
+        DataBuffer data = image.getRaster().getDataBuffer();
+        return (long) data.getSize() * data.getNumBanks()
+                * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+    }
+}
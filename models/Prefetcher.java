@@ -0,0 +1,81 @@
+package medicalimageviewer.models;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import medicalimageviewer.models.iterator.Lookahead;
+
+/**
+ * The Prefetcher class prepares the images iterators expect to show next on
+ * a low priority background thread. Images of the study are decoded into
+ * the study's image cache, and reconstructed slices are handed to the
+ * reconstruction's slice cache to render, so the next step is served from
+ * memory.
+ *
+ * Only the latest lookahead matters: each call drops the work still queued
+ * for earlier ones.
+ *
+ * @author Jeffrey Haines
+ */
+public class Prefetcher {
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Prefetcher.
+     * @author Jeffrey Haines
+     */
+    public Prefetcher() {
+        this.executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "miv-prefetch");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules the images of some lookaheads to be prepared, most likely
+     * first, replacing any work still queued. Never blocks.
+     * @param study the study the images belong to
+     * @param lookaheads the images to prepare
+     * @author Jeffrey Haines
+     */
+    public void prefetch(final Study study, Lookahead... lookaheads) {
+        executor.getQueue().clear();
+        for (Lookahead lookahead : lookaheads) {
+            final char axis = lookahead.getAxis();
+            for (final int index : lookahead.getIndexes()) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        prepare(study, axis, index);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Prepares one image.
+     * @param study the study the image belongs to
+     * @param axis 'z' for an image of the study, 'x' or 'y' for a slice
+     * @param index the index of the image along the axis
+     * @author Jeffrey Haines
+     */
+    private static void prepare(Study study, char axis, int index) {
+        if (axis == 'z') {
+            List<StudyImage> images = study.getStudyImages();
+            if (index >= 0 && index < images.size())
+                images.get(index).getImage();
+        } else if (study.getRec() != null) {
+            study.getRec().getSliceCache().warm(axis, index);
+        }
+    }
+}
@@ -1,8 +1,22 @@
 package medicalimageviewer.models;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * This class provides the reconstruction functionality stated by
@@ -12,40 +26,357 @@ import java.util.List;
  * @author Jeffrey Haines
  */
 public class Reconstruction {
-    int rec[][][];
+    ShortBuffer vol;    // grey value of voxel (x, y, z) at (z * yDims + y) * xDims + x
     int zDims;
     int yDims;
     int xDims;
+    int bits;       // significant bits of each grey value
+    int[] greys;    // display colour of each grey value
+    private SliceCache slices;  // recently rendered slices, created on first use
+    private int[] window;       // window lookup table for windowMin..windowMax
+    private int windowMin;
+    private int windowMax;
+    private int windowUsers;    // renders still reading the window table
     
     public Reconstruction (List<StudyImage> images) {
-        this.rec = create3d(images);
+        BufferedImage[] slices = new BufferedImage[images.size()];
+        for (int i = 0; i < slices.length; i++)
+            slices[i] = images.get(i).getImage();
+        this.vol = create3d(slices, null);
+        this.greys = greyScale(bits);
+    }
+    
+    /**
+     * Builds the reconstruction from slices that are already decoded.
+     * @param slices the decoded slices, in slice order
+     * @param storage where to store the volume, or null to store it on the heap
+     * @author Jeffrey Haines
+     */
+    Reconstruction (BufferedImage[] slices, ShortBuffer storage) {
+        this.vol = create3d(slices, storage);
+        this.greys = greyScale(bits);
+    }
+    
+    /**
+     * Starts an empty reconstruction whose slices are filled in one at a
+     * time with setSlice, so a study can be built while its slices are
+     * decoded without holding all of them. finish must be called once every
+     * slice was tried.
+     * @param xDims the width of a slice
+     * @param yDims the height of a slice
+     * @param zDims the number of slices
+     * @param storage where to store the volume, or null to store it on the heap
+     * @throws IllegalArgumentException if the volume has too many voxels
+     * @author Jeffrey Haines
+     */
+    Reconstruction (int xDims, int yDims, int zDims, ShortBuffer storage) {
+        this.vol = storage != null ? storage 
+                : ShortBuffer.allocate( voxels(xDims, yDims, zDims) );
+        this.xDims = xDims;
+        this.yDims = yDims;
+        this.zDims = zDims;
+    }
+    
+    /**
+     * Wraps a volume that was built before, such as a mapped volume file.
+     * @param vol the grey values, laid out as create3d stores them
+     * @param xDims the width of a slice
+     * @param yDims the height of a slice
+     * @param zDims the number of slices
+     * @param bits the significant bits of each grey value
+     * @author Jeffrey Haines
+     */
+    Reconstruction (ShortBuffer vol, int xDims, int yDims, int zDims, int bits) {
+        this.vol = vol;
+        this.xDims = xDims;
+        this.yDims = yDims;
+        this.zDims = zDims;
+        this.bits = bits;
+        this.greys = greyScale(bits);
+    }
+
+    /**
+     * Counts the voxels of a volume, which are indexed by int.
+     * @param xDims the width of a slice
+     * @param yDims the height of a slice
+     * @param zDims the number of slices
+     * @return the number of voxels
+     * @throws IllegalArgumentException if there are more voxels than one
+     *         buffer can hold
+     * @author Jeffrey Haines
+     */
+    static int voxels(int xDims, int yDims, int zDims) {
+        long voxels = (long) xDims * yDims * zDims;
+        if (voxels > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("a " + xDims + "x" + yDims + "x" + zDims
+                    + " volume has more voxels than the viewer can hold");
+        return (int) voxels;
     }
 
     /**
-     * Creates a 3d layer of the images
+     * Creates a 3d layer of the images. The volume is one flat array of the
+     * original grey values, slice after slice, each slice stored row by row.
+     * Slices are copied in parallel on the shared worker pool.
      * @param images
+     * @param storage where to store the volume, or null to store it on the heap
      * @return 3d reconstruction
+     * @throws IllegalArgumentException if there are no slices, or too many
+     *         voxels
      * @author Jeffrey Haines
      */
-    private int[][][] create3d(List<StudyImage> images) {
-        int count = 0;
-        BufferedImage image = images.get(0).getImage();
-        this.zDims = images.size();
+    private ShortBuffer create3d(final BufferedImage[] images, ShortBuffer storage) {
+        if (images.length == 0)
+            throw new IllegalArgumentException("a reconstruction needs at least one slice");
+        BufferedImage image = images[0];
+        this.zDims = images.length;
         this.yDims = image.getHeight();
         this.xDims = image.getWidth();
-        int rec_[][][] = new int[ zDims ][ xDims ][ yDims ];
-      
-        for(StudyImage i : images) {
-            image = i.getImage();
-            
-            for(int x = 0; x < image.getWidth(); x++) {
-                for(int y = 0; y < image.getHeight(); y++) {
-                    rec_[count][x][y] = image.getRGB(x, y);
+        this.bits = 0;
+        final ShortBuffer vol_ = storage != null ? storage 
+                : ShortBuffer.allocate( voxels(xDims, yDims, zDims) );
+        
+        List<Callable<Void>> tasks = new ArrayList<>(zDims);
+        for(int z = 0; z < zDims; z++) {
+            this.bits = Math.max(bits, bitsOf(images[z]));
+            final int slice = z;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    fillSlice(vol_.duplicate(), slice, images[slice]);
+                    return null;
+                }
+            });
+        }
+        
+        try {
+            for (Future<Void> f : Workers.invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while building the volume", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("could not build the volume", ex.getCause());
+        }
+        return vol_;
+    }
+    
+    /**
+     * Copies one decoded slice into a reconstruction started with the
+     * slice count constructor. Different slices may be set at the same time
+     * from different threads.
+     * @param z the index of the slice
+     * @param image the slice
+     * @author Jeffrey Haines
+     */
+    void setSlice(int z, BufferedImage image) {
+        fillSlice(vol.duplicate(), z, image);
+        synchronized (this) {
+            bits = Math.max(bits, bitsOf(image));
+        }
+    }
+    
+    /**
+     * Completes a reconstruction built with setSlice. The slices that could
+     * not be read are dropped and the ones after them move down, so the
+     * volume holds the readable slices in order, as create3d would.
+     * @param read whether each slice was set
+     * @author Jeffrey Haines
+     */
+    synchronized void finish(boolean[] read) {
+        int size = xDims * yDims;
+        ShortBuffer from = vol.duplicate();
+        ShortBuffer to = vol.duplicate();
+        int z = 0;
+        for (int i = 0; i < read.length; i++) {
+            if (!read[i])
+                continue;
+            if (z != i) {
+                from.limit((i + 1) * size).position(i * size);
+                to.position(z * size);
+                to.put(from);
+            }
+            z++;
+        }
+        this.zDims = z;
+        this.greys = greyScale(bits);
+    }
+    
+    /**
+     * Copies the grey values of one slice into the volume a row at a time.
+     * Byte and ushort grey images are copied straight out of their
+     * DataBuffer, other images are pulled out of the raster in bulk. The
+     * samples of 8 bit grey images are stored as the grey that getRGB
+     * reports for them, see displayGreys.
+     * @param out the volume, for the use of this call only
+     * @param z the index of the slice
+     * @param image the slice
+     * @author Jeffrey Haines
+     */
+    private void fillSlice(ShortBuffer out, int z, BufferedImage image) {
+        Raster raster = image.getRaster();
+        SampleModel model = raster.getSampleModel();
+        DataBuffer data = raster.getDataBuffer();
+        int width = Math.min(xDims, image.getWidth());
+        int height = Math.min(yDims, image.getHeight());
+        short[] row = new short[width];
+        short[] levels = isGrey(image) && bitsOf(image) == 8 ? displayGreys(image) : null;
+        
+        if (isGrey(image) && model instanceof ComponentSampleModel
+                && ((ComponentSampleModel) model).getPixelStride() == 1
+                && (data instanceof DataBufferUShort || data instanceof DataBufferByte)) {
+            ComponentSampleModel components = (ComponentSampleModel) model;
+            int tx = raster.getSampleModelTranslateX();
+            int ty = raster.getSampleModelTranslateY();
+            for(int y = 0; y < height; y++) {
+                int start = data.getOffset() + components.getOffset(-tx, y - ty);
+                out.position((z * yDims + y) * xDims);
+                if (data instanceof DataBufferUShort && levels == null) {
+                    out.put(((DataBufferUShort) data).getData(), start, width);
+                } else if (data instanceof DataBufferUShort) {
+                    short[] shorts = ((DataBufferUShort) data).getData();
+                    for(int x = 0; x < width; x++)
+                        row[x] = levels[shorts[start + x] & 0xFF];
+                    out.put(row);
+                } else {
+                    byte[] bytes = ((DataBufferByte) data).getData();
+                    for(int x = 0; x < width; x++)
+                        row[x] = levels != null ? levels[bytes[start + x] & 0xFF]
+                                                : (short) (bytes[start + x] & 0xFF);
+                    out.put(row);
                 }
             }
-            count++;
+        } else if (isGrey(image)) {
+            int[] samples = new int[width];
+            for(int y = 0; y < height; y++) {
+                raster.getSamples(0, y, width, 1, 0, samples);
+                for(int x = 0; x < width; x++)
+                    row[x] = levels != null ? levels[samples[x] & 0xFF] : (short) samples[x];
+                out.position((z * yDims + y) * xDims);
+                out.put(row);
+            }
+        } else {
+            // colour images keep their blue channel
+            int[] rgb = new int[width];
+            for(int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, rgb, 0, width);
+                for(int x = 0; x < width; x++)
+                    row[x] = (short) (rgb[x] & 0xFF);
+                out.position((z * yDims + y) * xDims);
+                out.put(row);
+            }
         }
-        return rec_;
+    }
+    
+    /**
+     * Gets the grey each sample of an 8 bit grey image is shown as. Java 2D
+     * takes these samples to be linear grey and converts them to sRGB for
+     * display, so a sample of 17 is drawn as 73 and 97 as 166. The volume
+     * keeps the displayed value, as getRGB reports it, so the reconstructed
+     * panes and the window thresholds match the slice as it is drawn.
+     * @param image an 8 bit grey image
+     * @return the displayed grey of each sample value
+     * @author Jeffrey Haines
+     */
+    static short[] displayGreys(BufferedImage image) {
+        ColorModel model = image.getColorModel();
+        short[] levels = new short[256];
+        for (int v = 0; v < levels.length; v++)
+            levels[v] = (short) (model.getRGB(v) & 0xFF);
+        return levels;
+    }
+    
+    /**
+     * Tells whether an image stores grey values directly in one band.
+     * @param image the image
+     * @return true for grey images, false for colour and palette images
+     * @author Jeffrey Haines
+     */
+    static boolean isGrey(BufferedImage image) {
+        return image.getRaster().getNumBands() == 1 
+                && !(image.getColorModel() instanceof IndexColorModel);
+    }
+    
+    /**
+     * Gets the number of significant bits of an image's grey values.
+     * Colour images are reduced to their 8 bit blue channel.
+     * @param image the image
+     * @return the bits per grey value
+     * @author Jeffrey Haines
+     */
+    static int bitsOf(BufferedImage image) {
+        if (isGrey(image))
+            return image.getColorModel().getComponentSize(0);
+        return 8;
+    }
+    
+    /**
+     * Gets the width of a slice of the volume.
+     * @return the x dimension
+     * @author Jeffrey Haines
+     */
+    public int getXDims() {
+        return xDims;
+    }
+    
+    /**
+     * Gets the height of a slice of the volume.
+     * @return the y dimension
+     * @author Jeffrey Haines
+     */
+    public int getYDims() {
+        return yDims;
+    }
+    
+    /**
+     * Gets the number of slices in the volume.
+     * @return the z dimension
+     * @author Jeffrey Haines
+     */
+    public int getZDims() {
+        return zDims;
+    }
+    
+    /**
+     * Gets the number of significant bits of the grey values.
+     * @return the bits per voxel
+     * @author Jeffrey Haines
+     */
+    public int getBits() {
+        return bits;
+    }
+    
+    /**
+     * Gets the largest grey value the voxels can hold, which is the top of
+     * the range window intensities are given in.
+     * @return the maximum grey value
+     * @author Jeffrey Haines
+     */
+    public int getMaxValue() {
+        return (1 << bits) - 1;
+    }
+    
+    /**
+     * Gets a 2D image of the reconstruction from the slice cache, which
+     * renders it on a miss and prefetches the slices the user is scrolling
+     * towards. The image is shared and must not be drawn on.
+     * @param axis  character denoting the axis we are displaying on
+     * @param index the index (pixel) that we are displaying at
+     * @return the cached image
+     * @author Jeffrey Haines
+     */
+    public BufferedImage getSlice(char axis, int index) {
+        return getSliceCache().get(axis, index);
+    }
+    
+    /**
+     * Gets the cache of rendered slices, creating it on first use.
+     * @return the slice cache
+     * @author Jeffrey Haines
+     */
+    public synchronized SliceCache getSliceCache() {
+        if (slices == null)
+            slices = new SliceCache(this, SliceCache.DEFAULT_BUDGET);
+        return slices;
     }
     
     /**
@@ -57,80 +388,236 @@ public class Reconstruction {
      * @author Jeffrey Haines
      */
     public BufferedImage construct2D(char axis, int index) {
+        return construct2D(axis, index, null);
+    }
+    
+    /**
+     * Construct the 2D Images based on the axis stated from the constructed
+     * 3d image, drawing into an existing image when it has the right size
+     * and type so that repeated calls do not allocate.
+     * @param axis  character denoting the axis we are displaying on
+     * @param index the index (pixel) that we are displaying at
+     * @param target the image to draw into, or null
+     * @return target if it was reused, otherwise a created buffered image
+     * @author Jeffrey Haines
+     */
+    public BufferedImage construct2D(char axis, int index, BufferedImage target) {
+        return render(axis, index, target, greys);
+    }
+    
+    /**
+     * Renders a 2D image of the reconstruction in a single pass over the
+     * volume, mapping each grey value to a colour through a lookup table.
+     * @param axis  character denoting the axis we are displaying on
+     * @param index the index (pixel) that we are displaying at
+     * @param target the image to draw into, or null
+     * @param scale the colour of each grey value
+     * @return target if it was reused, otherwise a created buffered image
+     * @author Jeffrey Haines
+     */
+    private BufferedImage render(char axis, int index, BufferedImage target, int[] scale) {
         BufferedImage creation;
+        int sliceSize = yDims * xDims;
         switch(axis){
-            case 'x':   creation = new BufferedImage(zDims, yDims, BufferedImage.TYPE_INT_RGB);
-                        for(int z = 0; z<zDims;z++){
-                            for(int y = 0; y<yDims;y++){
-                                creation.setRGB(zDims-(z+1), y, rec[z][index][y]);
-                            }
-                        }
+            case 'x':   creation = reuse(target, zDims, yDims);
+                        copyColumns(pixels(creation), index, scale);
                         break;
-            case 'y':   creation = new BufferedImage(xDims, zDims, BufferedImage.TYPE_INT_RGB);
-                        for(int z = 0; z<zDims;z++){
-                            for(int x = 0; x<xDims;x++){
-                                creation.setRGB(x, zDims-(z+1), rec[z][x][index]);
-                            }
-                        }
+            case 'y':   creation = reuse(target, xDims, zDims);
+                        copyRows(pixels(creation), index * xDims, sliceSize, 
+                                 (zDims - 1) * xDims, -xDims, zDims, scale);
                         break;
-            case 'z':   creation = new BufferedImage(xDims, yDims, BufferedImage.TYPE_INT_RGB);
-                        for(int y = 0; y<yDims;y++){
-                            for(int x = 0; x<xDims;x++){
-                                creation.setRGB(x, y, rec[index][x][y]);
-                            }
-                        }
+            case 'z':   creation = reuse(target, xDims, yDims);
+                        copyRows(pixels(creation), index * sliceSize, xDims, 
+                                 0, xDims, yDims, scale);
                         break;
             default:    return null;
         }
         return creation;
     }
     
+    /**
+     * Reuses an image as a drawing target if it is a TYPE_INT_RGB image of
+     * the given size, otherwise creates one.
+     * @param target the image to reuse, or null
+     * @param width the required width
+     * @param height the required height
+     * @return the image to draw into
+     * @author Jeffrey Haines
+     */
+    private static BufferedImage reuse(BufferedImage target, int width, int height) {
+        if (target != null && target.getType() == BufferedImage.TYPE_INT_RGB
+                && target.getWidth() == width && target.getHeight() == height)
+            return target;
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+    
+    /**
+     * Copies the column of voxels at x = index of every slice into the
+     * pixels of a sagittal RGB image, last slice first. Heap volumes are
+     * read straight from their backing array.
+     * @param out the pixels to write, zDims wide and yDims high
+     * @param index the x index of the columns
+     * @param scale the colour of each grey value
+     * @author Jeffrey Haines
+     */
+    private void copyColumns(int[] out, int index, int[] scale) {
+        int sliceSize = yDims * xDims;
+        int mask = scale.length - 1;
+        for(int z = 0; z<zDims;z++){
+            int pixel = zDims-(z+1);
+            if (vol.hasArray()) {
+                short[] voxels = vol.array();
+                int voxel = vol.arrayOffset() + z * sliceSize + index;
+                for(int y = 0; y<yDims;y++){
+                    out[pixel] = scale[voxels[voxel] & mask];
+                    voxel += xDims;
+                    pixel += zDims;
+                }
+            } else {
+                int voxel = z * sliceSize + index;
+                for(int y = 0; y<yDims;y++){
+                    out[pixel] = scale[vol.get(voxel) & mask];
+                    voxel += xDims;
+                    pixel += zDims;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copies rows of the volume into the pixels of an RGB image, mapping
+     * each grey value to a colour through a lookup table.
+     * @param out the pixels to write
+     * @param voxel index of the first voxel of the first row
+     * @param voxelStep distance between the first voxels of two rows
+     * @param pixel index of the first pixel of the first row
+     * @param pixelStep distance between the first pixels of two rows
+     * @param rows the number of rows to copy
+     * @param scale the colour of each grey value
+     * @author Jeffrey Haines
+     */
+    private void copyRows(int[] out, int voxel, int voxelStep, 
+                          int pixel, int pixelStep, int rows, int[] scale) {
+        int mask = scale.length - 1;
+        for(int r = 0; r < rows; r++){
+            for(int x = 0; x < xDims; x++)
+                out[pixel + x] = scale[vol.get(voxel + x) & mask];
+            voxel += voxelStep;
+            pixel += pixelStep;
+        }
+    }
+    
+    /**
+     * Gets the pixel array of a TYPE_INT_RGB image.
+     * @param image the image
+     * @return the packed RGB pixels, row by row
+     * @author Jeffrey Haines
+     */
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+    
+    /**
+     * Creates the grey scale used to display grey values, mapping each
+     * possible value to a packed RGB grey scaled to 8 bits.
+     * @param bits the significant bits of the grey values
+     * @return the grey scale, indexed by grey value
+     * @author Jeffrey Haines
+     */
+    private static int[] greyScale(int bits) {
+        int[] scale = new int[1 << bits];
+        int shift = bits - 8;
+        for (int v = 0; v < scale.length; v++) {
+            int g = shift >= 0 ? v >> shift : v << -shift;
+            scale[v] = g << 16 | g << 8 | g;
+        }
+        return scale;
+    }
+    
     /**
      * Displays the 2d image on view based on the reconstruction (Windowing)
      * @param axis  character denoting the axis we are displaying on
      * @param index the index (pixel) that we are displaying at
-     * @param min the minimum intensity
-     * @param max the maximum intensity
+     * @param min the minimum intensity, as a grey value of the volume
+     * @param max the maximum intensity, as a grey value of the volume
      * @return a windowed buffered image
      * @author Jeffrey Haines
      */
     public BufferedImage window(char axis, int index, int min, int max)
     {
-        BufferedImage temp = construct2D(axis, index);
-        BufferedImage out = new BufferedImage(temp.getWidth(null), temp.getWidth(null), BufferedImage.TYPE_INT_ARGB);
-        
-        Color minColor = new Color(min, min, min);
-        Color maxColor = new Color(max, max, max);
-        
-        for(int y = 0; y < temp.getHeight() - 1; y++) {
-            for(int x = 0; x < temp.getWidth() - 1; x++) {
-                Color currentColor = new Color(temp.getRGB(x, y), false);
-                if(currentColor.getBlue() > maxColor.getBlue())
-                    out.setRGB(x, y, Color.WHITE.getRGB());
-                else if(currentColor.getBlue() < minColor.getBlue())
-                    out.setRGB(x, y, Color.BLACK.getRGB());
-                else 
-                {
-                    int newColor = generateScaledColor(currentColor.getBlue(), minColor, maxColor);
-                    out.setRGB(x, y, new Color(newColor, newColor, newColor).getRGB());
-                }
+        return window(axis, index, min, max, null);
+    }
+    
+    /**
+     * Displays the 2d image on view based on the reconstruction (Windowing),
+     * drawing into an existing image when it has the right size and type.
+     * The slice is read straight from the volume and windowed through a
+     * lookup table in a single pass.
+     * @param axis  character denoting the axis we are displaying on
+     * @param index the index (pixel) that we are displaying at
+     * @param min the minimum intensity, as a grey value of the volume
+     * @param max the maximum intensity, as a grey value of the volume
+     * @param target the image to draw into, or null
+     * @return target if it was reused, otherwise a windowed buffered image
+     * @author Jeffrey Haines
+     */
+    public BufferedImage window(char axis, int index, int min, int max, BufferedImage target)
+    {
+        int[] scale = windowScale(min, max);
+        try {
+            return render(axis, index, target, scale);
+        } finally {
+            releaseWindow(scale);
+        }
+    }
+    
+    /**
+     * Gets the lookup table that windows each grey value of the volume, for
+     * one render that must hand it back with releaseWindow. The table is
+     * kept and shared by every slice until min or max change, and is then
+     * refilled in place, so dragging the window does not allocate. Only
+     * when another render is still reading it with the old window is a
+     * new table made.
+     * Intensities are grey values at the full depth of the volume, so a 12
+     * bit study is windowed over 4096 levels: values above max are white,
+     * values below min are black and values in between are scaled linearly
+     * over the display grey range.
+     * @param min the minimum intensity
+     * @param max the maximum intensity
+     * @return the colour of each grey value
+     * @author Jeffrey Haines
+     */
+    private synchronized int[] windowScale(int min, int max) {
+        if (window == null || windowMin != min || windowMax != max) {
+            if (window == null || windowUsers > 0 || window.length != 1 << bits) {
+                window = new int[1 << bits];
+                windowUsers = 0;
             }
+            int[] scale = window;
+            int low = Math.max(0, Math.min(min, scale.length));
+            int high = Math.max(low, Math.min(max + 1, scale.length));
+            double slope = 255.0 / Math.max(1, max - min);
+            Arrays.fill(scale, 0, low, 0);
+            Arrays.fill(scale, high, scale.length, 0xFFFFFF);
+            for (int v = low; v < high; v++) {
+                int g = (int) Math.round(slope * (v - min));
+                scale[v] = g << 16 | g << 8 | g;
+            }
+            windowMin = min;
+            windowMax = max;
         }
-        
-        return out;
+        windowUsers++;
+        return window;
     }
     
     /**
-     * Generate Scale Color
-     * @param color color to be scaled
-     * @param min the minimum color
-     * @param max the maximum color
-     * @return a scaled color value
+     * Hands back a table taken with windowScale once the render is done
+     * reading it.
+     * @param scale the table
      * @author Jeffrey Haines
      */
-    private int generateScaledColor(int color, Color min, Color max) {
-        double slope = 255 / (max.getBlue() - min.getBlue());
-        int returnValue =  (int)(slope * (color - min.getBlue()));
-        return returnValue;
+    private synchronized void releaseWindow(int[] scale) {
+        if (scale == window)
+            windowUsers--;
     }
 }
@@ -0,0 +1,285 @@
+package medicalimageviewer.models;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SliceCache class keeps recently rendered slices of a reconstruction,
+ * keyed by axis and index, within a memory budget. It watches the order in
+ * which slices of an axis are requested and renders the next few slices in
+ * the direction the user is scrolling on a background thread, so stepping
+ * through or back over a region is served from memory.
+ *
+ * Cached slices are shared and must not be drawn on.
+ *
+ * @author Jeffrey Haines
+ */
+public class SliceCache {
+    // default byte budget for rendered slices
+    static final long DEFAULT_BUDGET = 64L << 20;
+    // default number of slices to render ahead of the user
+    static final int DEFAULT_DEPTH = 4;
+
+    private final Reconstruction rec;
+    private final LinkedHashMap<Integer, BufferedImage> slices;
+    private final Map<Integer, Prefetch> pending;
+    private final Map<Character, Integer> lastIndex;
+    private final ThreadPoolExecutor prefetcher;
+    private long budget;
+    private long bytes;
+    private int depth;
+
+    /**
+     * Slice Cache.
+     * @param rec the reconstruction the slices are rendered from
+     * @param budget the maximum number of bytes of rendered slices to keep
+     * @author Jeffrey Haines
+     */
+    public SliceCache(Reconstruction rec, long budget) {
+        this.rec = rec;
+        this.slices = new LinkedHashMap<>(64, 0.75f, true);
+        this.pending = new HashMap<>();
+        this.lastIndex = new HashMap<>();
+        this.budget = budget;
+        this.depth = DEFAULT_DEPTH;
+        this.prefetcher = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "miv-slice-prefetch");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        this.prefetcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets a rendered slice, rendering it if it is neither cached nor being
+     * prefetched, and schedules the slices that follow it in the direction
+     * of travel.
+     * @param axis the axis of the slice, 'x', 'y' or 'z'
+     * @param index the index of the slice along the axis
+     * @return the shared rendered slice
+     * @author Jeffrey Haines
+     */
+    public BufferedImage get(char axis, int index) {
+        Integer key = key(axis, index);
+        Future<BufferedImage> inFlight;
+        synchronized (this) {
+            Integer last = lastIndex.put(axis, index);
+            if (last != null && last != index)
+                prefetch(axis, index, index > last ? 1 : -1);
+
+            BufferedImage image = slices.get(key);
+            if (image != null)
+                return image;
+            inFlight = pending.get(key);
+        }
+
+        if (inFlight != null) {
+            try {
+                return inFlight.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException ex) {
+                // render it here instead
+            }
+        }
+        BufferedImage image = rec.construct2D(axis, index);
+        put(key, image);
+        return image;
+    }
+
+    /**
+     * Drops queued prefetches and schedules the next slices ahead of index.
+     * @param axis the axis being scrolled
+     * @param index the slice just requested
+     * @param direction 1 when scrolling forwards, -1 when scrolling back
+     * @author Jeffrey Haines
+     */
+    private void prefetch(char axis, int index, int direction) {
+        Iterator<Runnable> queued = prefetcher.getQueue().iterator();
+        while (queued.hasNext()) {
+            Prefetch p = (Prefetch) queued.next();
+            queued.remove();
+            pending.remove(p.key);
+            p.cancel(false);
+        }
+
+        int size = size(axis);
+        for (int i = 1; i <= depth; i++) {
+            int next = index + i * direction;
+            if (next < 0 || next >= size)
+                break;
+            Integer key = key(axis, next);
+            if (slices.containsKey(key) || pending.containsKey(key))
+                continue;
+            Prefetch p = new Prefetch(key, axis, next);
+            pending.put(key, p);
+            prefetcher.execute(p);
+        }
+    }
+
+    /**
+     * Renders a slice in the background unless it is cached or already being
+     * rendered. Unlike get, this does not count as the user moving, so it
+     * neither changes the direction of travel nor drops queued slices.
+     * @param axis the axis of the slice, 'x', 'y' or 'z'
+     * @param index the index of the slice along the axis
+     * @author Jeffrey Haines
+     */
+    public synchronized void warm(char axis, int index) {
+        if (depth == 0 || index < 0 || index >= size(axis))
+            return;
+        Integer key = key(axis, index);
+        if (slices.containsKey(key) || pending.containsKey(key))
+            return;
+        Prefetch p = new Prefetch(key, axis, index);
+        pending.put(key, p);
+        prefetcher.execute(p);
+    }
+
+    /**
+     * Adds a rendered slice, evicting least recently used slices until the
+     * cache is back within its budget.
+     * @param key the key of the slice
+     * @param image the rendered slice
+     * @author Jeffrey Haines
+     */
+    private synchronized void put(Integer key, BufferedImage image) {
+        BufferedImage old = slices.put(key, image);
+        if (old != null)
+            bytes -= ImageCache.sizeOf(old);
+        bytes += ImageCache.sizeOf(image);
+
+        Iterator<Map.Entry<Integer, BufferedImage>> it = slices.entrySet().iterator();
+        while (bytes > budget && it.hasNext()) {
+            Map.Entry<Integer, BufferedImage> eldest = it.next();
+            if (eldest.getKey().equals(key))
+                continue;
+            bytes -= ImageCache.sizeOf(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes every slice from the cache and drops queued prefetches.
+     * @author Jeffrey Haines
+     */
+    public synchronized void clear() {
+        prefetcher.getQueue().clear();
+        pending.clear();
+        slices.clear();
+        lastIndex.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Changes the byte budget of the cache.
+     * @param budget the new budget in bytes
+     * @author Jeffrey Haines
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        while (bytes > budget && !slices.isEmpty()) {
+            Iterator<BufferedImage> eldest = slices.values().iterator();
+            bytes -= ImageCache.sizeOf(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Changes how many slices are rendered ahead of the user.
+     * @param depth the number of slices, 0 to disable prefetching
+     * @author Jeffrey Haines
+     */
+    public synchronized void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Gets the number of bytes of rendered slices currently cached.
+     * @return the cached bytes
+     * @author Jeffrey Haines
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of slices along an axis.
+     * @param axis the axis
+     * @return the number of slices
+     * @author Jeffrey Haines
+     */
+    private int size(char axis) {
+        switch (axis) {
+            case 'x':   return rec.getXDims();
+            case 'y':   return rec.getYDims();
+            case 'z':   return rec.getZDims();
+            default:    return 0;
+        }
+    }
+
+    /**
+     * Packs an axis and index into a cache key.
+     * @param axis the axis
+     * @param index the index along the axis
+     * @return the key
+     * @author Jeffrey Haines
+     */
+    private static Integer key(char axis, int index) {
+        return axis << 24 | index;
+    }
+
+    /**
+     * A slice rendered in the background, which adds itself to the cache
+     * when it completes.
+     */
+    private class Prefetch extends FutureTask<BufferedImage> {
+        final Integer key;
+
+        Prefetch(Integer key, final char axis, final int index) {
+            super(new Callable<BufferedImage>() {
+                @Override
+                public BufferedImage call() {
+                    return rec.construct2D(axis, index);
+                }
+            });
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            BufferedImage image = null;
+            if (!isCancelled()) {
+                try {
+                    image = get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    // the slice is rendered again when it is requested
+                }
+            }
+            synchronized (SliceCache.this) {
+                if (pending.get(key) != this)
+                    return;
+                pending.remove(key);
+                if (image != null)
+                    put(key, image);
+            }
+        }
+    }
+}
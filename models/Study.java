@@ -1,15 +1,29 @@
 package medicalimageviewer.models;
 
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferUShort;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 import javax.imageio.ImageIO;
-import javax.imageio.stream.FileImageInputStream;
 
 import medicalimageviewer.models.iterator.*;
 
@@ -25,6 +39,11 @@ public class Study {
     private int mode;   //this is the view mode selected
     private Reconstruction rec; 
     private File studyPath;
+    private final List<String> loadFailures;
+    private String loadError;   // why the last open failed, or null
+    private final ImageCache imageCache;    // recently decoded study images
+    private int[] savedState;   // snapshot of the state in the .sdy file, or null
+    private File volumeDirectory;   // where the volume file is kept, null for the study directory
     
     // accepted image extensions
     static final String[] EXTENSIONS = new String[]{"jpeg", "jpg", "JPEG", "acr" };
@@ -38,12 +57,59 @@ public class Study {
             return (false);
         }};
     
+    // orders slice files by name, comparing runs of digits numerically so
+    // that 2.jpg sorts before 10.jpg
+    static final Comparator<File> SLICE_ORDER = new Comparator<File>() {
+        @Override
+        public int compare(File a, File b) {
+            String s = a.getName();
+            String t = b.getName();
+            int i = 0, j = 0;
+            while (i < s.length() && j < t.length()) {
+                char c = s.charAt(i);
+                char d = t.charAt(j);
+                if (Character.isDigit(c) && Character.isDigit(d)) {
+                    int si = i, tj = j;
+                    while (i < s.length() && Character.isDigit(s.charAt(i))) i++;
+                    while (j < t.length() && Character.isDigit(t.charAt(j))) j++;
+                    String m = s.substring(si, i).replaceFirst("^0+(?=.)", "");
+                    String n = t.substring(tj, j).replaceFirst("^0+(?=.)", "");
+                    if (m.length() != n.length())
+                        return m.length() - n.length();
+                    int cmp = m.compareTo(n);
+                    if (cmp != 0)
+                        return cmp;
+                } else {
+                    if (c != d)
+                        return c - d;
+                    i++;
+                    j++;
+                }
+            }
+            return (s.length() - i) - (t.length() - j);
+        }};
+    
+    // default byte budget for decoded study images
+    static final long DEFAULT_CACHE_BUDGET = 
+            Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 4);
+    
     /**
      * Study (list of images).
      * @author Jeffrey Haines
      */
     public Study() {
-        this.studyImages = new LinkedList<>();
+        this(DEFAULT_CACHE_BUDGET);
+    }
+    
+    /**
+     * Study (list of images).
+     * @param cacheBudget the number of bytes of decoded images to keep in memory
+     * @author Jeffrey Haines
+     */
+    public Study(long cacheBudget) {
+        this.studyImages = new ArrayList<>();
+        this.loadFailures = new ArrayList<>();
+        this.imageCache = new ImageCache(cacheBudget);
     }
     
     /**
@@ -57,51 +123,46 @@ public class Study {
             this.studyPath = studyPath;
             studyName = studyPath.getName();
             
-            // get study images
-            for(File i : studyPath.listFiles(IMAGE_FILTER))
-            {
-                try {
-                    
-                    BufferedImage fImage;
-                    if(i.getName().endsWith(".acr")){
-                        fImage = readACR(i);
-                    }
-                    else{
-                        FileInputStream fInput = new FileInputStream(i);
-                        fImage = ImageIO.read(fInput);
-                    }
-                    
-                    int[] res = {fImage.getHeight(), fImage.getWidth()};
-
-                    StudyImage image = new StudyImage(i.getName(), res, fImage);
-                    studyImages.add(image);     
-                } catch (IOException ex) {
-                    Logger.getLogger(Study.class.getName()).log(Level.SEVERE, 
-                                null, ex);
-                }  
-            } 
-
-            // create new reconstruction
-            rec = new Reconstruction(studyImages);
+            loadFailures.clear();
+            loadError = null;
+            File[] files = studyPath.listFiles(IMAGE_FILTER);
+            if (files == null) {
+                loadError = studyPath + " is not a readable directory";
+                return null;
+            }
+            if (files.length == 0) {
+                loadError = "The study contains no JPEG or ACR images";
+                return null;
+            }
+            Arrays.sort(files, SLICE_ORDER);
+            
+            // reuse the volume built the last time, if the slices are unchanged
+            long key = VolumeCache.key(files);
+            File volumeFile = getVolumeFile();
+            rec = VolumeCache.read(volumeFile, key);
+            if (rec != null) {
+                int[] res = {rec.getYDims(), rec.getXDims()};
+                for (File i : files)
+                    studyImages.add(new StudyImage(i.getName(), res, i, imageCache));
+            } else if (!loadImages(files, volumeFile, key)) {
+                return null;
+            }
             
             ArrayList<StudyImageIterator> iterators = new ArrayList<>(6);
-            if (new File(studyPath, this.studyName.concat(".sdy")).exists())
+            File stateFile = new File(studyPath, this.studyName.concat(StudyState.EXTENSION));
+            if (stateFile.exists())
             {
                 try
                 {
-                   FileInputStream fileIn = new FileInputStream(new File(studyPath, 
-                                                    this.studyName.concat(".sdy")));
-                   ObjectInputStream in = new ObjectInputStream(fileIn);
-                   iterators = (ArrayList<StudyImageIterator>) in.readObject();
-                   this.mode = (int) in.readObject();
-                   in.close();
-                   fileIn.close();
-                   return iterators;
+                   StudyState state = StudyState.read(stateFile, this);
+                   this.mode = state.getMode();
+                   this.savedState = StudyState.snapshot(mode, state.getIterators());
+                   return state.getIterators();
                 }catch(IOException i)
                 {
-                   return null;
-                }catch(ClassNotFoundException c)
-                {
+                   Logger.getLogger(Study.class.getName()).log(Level.SEVERE, 
+                            "Could not read " + stateFile, i);
+                   loadError = "Could not read " + stateFile.getName() + ": " + i.getMessage();
                    return null;
                 }
             } else {     
@@ -117,6 +178,134 @@ public class Study {
         return null;
     }
     
+    /**
+     * Load Images. Decodes the study images in parallel and copies each one
+     * into the reconstruction as soon as it is decoded, so no more than
+     * about one decoded slice per worker is held besides the ones kept in
+     * the image cache. The first readable slice gives the size of the
+     * volume. The volume is built in the study's volume file, which is only
+     * completed if every slice could be read.
+     * @param files the slice files, in slice order
+     * @param volumeFile the volume file of the study
+     * @param key the key of the slice files
+     * @return false if loading was interrupted, no slice could be read or
+     *         the volume would be too large
+     * @author Jeffrey Haines
+     */
+    private boolean loadImages(final File[] files, File volumeFile, long key) {
+        BufferedImage first = null;
+        int offset = 0;     // index of the first readable slice
+        for (; offset < files.length; offset++) {
+            try {
+                first = readImage(files[offset]);
+                break;
+            } catch (IOException | RuntimeException ex) {
+                loadFailed(files[offset], ex);
+            }
+        }
+        if (first == null) {
+            loadError = "None of the study's images could be read";
+            return false;
+        }
+        
+        final int count = files.length - offset;
+        try {
+            Reconstruction.voxels(first.getWidth(), first.getHeight(), count);
+        } catch (IllegalArgumentException ex) {
+            loadError = ex.getMessage();
+            return false;
+        }
+        VolumeCache.Output output = VolumeCache.create(volumeFile, 
+                    first.getWidth(), first.getHeight(), count);
+        final Reconstruction volume = output != null ? output.getVolume() 
+                : new Reconstruction(first.getWidth(), first.getHeight(), count, null);
+        volume.setSlice(0, first);
+        
+        // the first slices are where viewing starts, so they are the ones
+        // handed to the image cache, as many as fit its budget
+        final int cached = (int) Math.min(count, 
+                    imageCache.getBudget() / Math.max(1, ImageCache.sizeOf(first)));
+        final int[][] res = new int[count][];
+        res[0] = new int[] {first.getHeight(), first.getWidth()};
+        List<Callable<BufferedImage>> tasks = new ArrayList<>(count - 1);
+        for (int z = 1; z < count; z++) {
+            final int slice = z;
+            final File file = files[offset + z];
+            tasks.add(new Callable<BufferedImage>() {
+                @Override
+                public BufferedImage call() throws IOException {
+                    BufferedImage image = readImage(file);
+                    volume.setSlice(slice, image);
+                    res[slice] = new int[] {image.getHeight(), image.getWidth()};
+                    return slice < cached ? image : null;
+                }
+            });
+        }
+        
+        List<Future<BufferedImage>> decoded;
+        try {
+            decoded = Workers.invokeAll(tasks);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (output != null)
+                output.discard();
+            loadError = "Loading was interrupted";
+            return false;
+        }
+        
+        boolean[] read = new boolean[count];
+        BufferedImage[] images = new BufferedImage[count];
+        read[0] = true;
+        images[0] = cached > 0 ? first : null;
+        for (int z = 1; z < count; z++) {
+            try {
+                images[z] = decoded.get(z - 1).get();
+                read[z] = true;
+            } catch (ExecutionException ex) {
+                loadFailed(files[offset + z], ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if (output != null)
+                    output.discard();
+                loadError = "Loading was interrupted";
+                return false;
+            }
+        }
+        volume.finish(read);
+        if (output != null && loadFailures.isEmpty())
+            output.commit(key);
+        else if (output != null)
+            output.discard();
+        rec = volume;
+        
+        for (int z = 0; z < count; z++)
+            if (read[z])
+                studyImages.add(new StudyImage(files[offset + z].getName(), res[z], 
+                            files[offset + z], imageCache));
+        
+        // keep the decoded slices that fit, favouring the first slices
+        for (int i = studyImages.size() - 1, z = count - 1; z >= 0; z--) {
+            if (!read[z])
+                continue;
+            if (images[z] != null)
+                imageCache.put(studyImages.get(i), images[z]);
+            i--;
+        }
+        return true;
+    }
+    
+    /**
+     * Records a slice that could not be read.
+     * @param file the slice file
+     * @param cause why it could not be read
+     * @author Jeffrey Haines
+     */
+    private void loadFailed(File file, Throwable cause) {
+        loadFailures.add(file.getName() + ": " + cause.getMessage());
+        Logger.getLogger(Study.class.getName()).log(Level.SEVERE, 
+                    "Could not read " + file, cause);
+    }
+    
     /**
      * Save. saves a .sdy file to the study directory
      * containing the study mode (view1/view4) and the
@@ -127,20 +316,21 @@ public class Study {
     public void save(ArrayList<StudyImageIterator> iterators) {
         try
         {
-           FileOutputStream fileOut = new FileOutputStream(new File(studyPath, 
-                                                this.studyName.concat(".sdy")));
-           ObjectOutputStream out = new ObjectOutputStream(fileOut);
-           out.writeObject(iterators);
-           out.writeObject(this.mode);
-           out.close();
+           StudyState.write(new File(studyPath, this.studyName.concat(StudyState.EXTENSION)), 
+                            this.mode, iterators);
+           savedState = StudyState.snapshot(mode, iterators);
         }catch(IOException i)
         {
-            i.printStackTrace();
+            Logger.getLogger(Study.class.getName()).log(Level.SEVERE, 
+                        "Could not save " + studyName, i);
         }
     }
     
     /**
-     * saveAs. save a study to a new directory
+     * saveAs. save a study to a new directory. The slice files are copied
+     * unchanged, in parallel, together with the volume file, and the new
+     * study takes over the slices and volume already in memory instead of
+     * decoding the copies again.
      * @param iterators an arraylist of the iterators.
      * @param savePath the path of the newly saved study
      * @return the new study with it's new file path and name.
@@ -148,68 +338,83 @@ public class Study {
      */
     public Study saveAs(ArrayList<StudyImageIterator> iterators, File savePath) {
         try {     
-            if(!savePath.exists()){
-                savePath.mkdir();
-            } else {
+            if(savePath.exists())
                 savePath = new File(savePath, savePath.getName()+"_copy");
+            Files.createDirectories(savePath.toPath());
+            
+            Study newStudy = new Study(imageCache.getBudget());
+            newStudy.studyPath = savePath;
+            newStudy.studyName = savePath.getName();
+            newStudy.rec = rec;
+            newStudy.mode = mode;
+            newStudy.loadFailures.addAll(loadFailures);
+            
+            // copy the slice files, keeping their modification times so the
+            // copied volume file still matches them
+            List<Callable<Void>> copies = new ArrayList<>(studyImages.size() + 1);
+            for (final StudyImage i : studyImages) {
+                final File source = i.getSource();
+                final File target = new File(savePath, source != null 
+                            ? source.getName() : i.getName() + ".JPEG");
+                StudyImage copy = source != null
+                        ? new StudyImage(i.getName(), i.getResolution(), target, newStudy.imageCache)
+                        : new StudyImage(i.getName(), i.getResolution(), i.getImage());
+                newStudy.studyImages.add(copy);
+                BufferedImage decoded = imageCache.get(i);
+                if (decoded != null)
+                    newStudy.imageCache.put(copy, decoded);
+                copies.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        if (source != null)
+                            Files.copy(source.toPath(), target.toPath(), 
+                                    StandardCopyOption.REPLACE_EXISTING,
+                                    StandardCopyOption.COPY_ATTRIBUTES);
+                        else if (!ImageIO.write(i.getImage(), "JPEG", target))
+                            throw new IOException("no JPEG writer for " + i.getName());
+                        return null;
+                    }
+                });
             }
-            // Save images to new path
-            for(StudyImage i: this.studyImages) 
-                ImageIO.write(i.getImage(), "JPEG", 
-                            new File(savePath, i.getName()+".JPEG"));
+            final File volumeFile = getVolumeFile();
+            final File newVolumeFile = new File(savePath, newStudy.studyName.concat(VolumeCache.EXTENSION));
+            if (volumeFile.isFile()) {
+                copies.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        Files.copy(volumeFile.toPath(), newVolumeFile.toPath(), 
+                                StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.COPY_ATTRIBUTES);
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> f : Workers.invokeAll(copies))
+                f.get();
             
-            // Create new study, try to open and save it, then return it.
-            Study newStudy = new Study();
-            newStudy.open(savePath);
-            newStudy.setMode(mode);
             newStudy.save(iterators); 
             return newStudy;
-        } catch(IOException ex) {
+        } catch(IOException | ExecutionException ex) {
+            Logger.getLogger(Study.class.getName()).log(Level.SEVERE, 
+                        "Could not save study to " + savePath, ex);
+            return this;
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
             return this;
-        } 
+        }
     }
     
     /**
-     * Reads the .sdy file into an array list
+     * Compares the current state with the one last saved or opened, without
+     * reading the .sdy file: the view mode and the position and window of
+     * every iterator must match.
      * @param iterators the current state iterators.
      * @return if the saved state is equivalent to the current state
      * @author Jeffrey Haines
      */
     public boolean checkWithSaved(ArrayList<StudyImageIterator> iterators) {
-        if (new File(this.studyPath, this.studyName.concat(".sdy")).exists())
-        {
-            try 
-            {
-                FileInputStream fileIn = new FileInputStream(new File(this.studyPath, 
-                         this.studyName.concat(".sdy")));
-                ObjectInputStream in = new ObjectInputStream(fileIn);
-                ArrayList<StudyImageIterator> savedIterators = (ArrayList<StudyImageIterator>) in.readObject();
-                int savedMode = (int) in.readObject();
-                in.close();
-                fileIn.close();
-               
-                // check if iterators are the same
-                boolean equal = false;
-                for (int i = 0; i < iterators.size(); i++)
-                {
-                    if (!savedIterators.get(i).equals(iterators.get(i)))
-                    {
-                        equal = false;
-                        break;
-                    }
-                    else
-                        equal = true;
-                }
-                
-                // check and retun if view mode is the same
-                return savedMode == mode;
-            }
-            catch(IOException | ClassNotFoundException i)
-            {
-               return false;
-            }
-        }
-        return false;
+        return savedState != null && iterators != null
+                && Arrays.equals(savedState, StudyState.snapshot(mode, iterators));
     }
     
     /**
@@ -290,6 +495,27 @@ public class Study {
        this.mode = mode;
     }
     
+    /**
+     * Changes where the volume file of the study is kept, for example to
+     * leave a read only or shared study directory untouched. It takes
+     * effect with the next open.
+     * @param volumeDirectory the directory, or null for the study directory
+     * @author Jeffrey Haines
+     */
+    public void setVolumeDirectory(File volumeDirectory) {
+        this.volumeDirectory = volumeDirectory;
+    }
+    
+    /**
+     * Gets the file the volume of the study is kept in.
+     * @return the volume file
+     * @author Jeffrey Haines
+     */
+    File getVolumeFile() {
+        return new File(volumeDirectory != null ? volumeDirectory : studyPath, 
+                    studyName.concat(VolumeCache.EXTENSION));
+    }
+    
     /**
      * Gets the File path.
      * @return mode the view mode of the study
@@ -328,45 +554,119 @@ public class Study {
     }
     
     /**
-     * Read ACR.
+     * Read Image. Decodes a single slice file, either ACR or JPEG.
+     * @param file the slice file
+     * @return the decoded image
+     * @throws IOException if the file could not be decoded
+     * @author Jeffrey Haines
+     */
+    static BufferedImage readImage(File file) throws IOException {
+        BufferedImage image;
+        if (file.getName().endsWith(".acr"))
+            image = readACR(file);
+        else
+            image = ImageIO.read(file);
+        if (image == null)
+            throw new IOException("unsupported image format");
+        return image;
+    }
+    
+    /**
+     * Gets the cache holding the recently decoded study images.
+     * @return the image cache
+     * @author Jeffrey Haines
+     */
+    public ImageCache getImageCache() {
+        return imageCache;
+    }
+    
+    /**
+     * Gets the slices that could not be read by the last open.
+     * @return one "name: reason" entry per failed slice
+     * @author Jeffrey Haines
+     */
+    public List<String> getLoadFailures() {
+        return loadFailures;
+    }
+    
+    /**
+     * Gets the reason the last open returned null, such as a directory
+     * without images or one where no slice could be read.
+     * @return the reason, or null if the last open succeeded
+     * @author Jeffrey Haines
+     */
+    public String getLoadError() {
+        return loadError;
+    }
+    
+    /**
+     * Read ACR. The file is read in one bulk read, its ACR-NEMA header is
+     * parsed for the matrix size and sample layout, and the pixel block is
+     * unpacked straight into the sample array of an image of exactly that
+     * size.
      * @param file the ACR file
      * @return the created buffered Image
+     * @throws IOException if the file is too short or could not be read
      * @auther Jeffrey Haines
      */
-    public BufferedImage readACR(File file){
-        FileImageInputStream imageFile = null;
-        try{
-            imageFile = new FileImageInputStream(file);
-            imageFile.seek(0x2000);
-        } catch(IOException e) {
-            return null;
+    public static BufferedImage readACR(File file) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file.toPath(), 
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("file too large: " + size + " bytes");
+            data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining() && channel.read(data) >= 0);
         }
-        int sliceWidth = 256;
-    	int sliceHeight = 256;
-    	    
-    	BufferedImage sliceBuffer = 
-    	    new BufferedImage( sliceWidth,sliceHeight,
-    			       BufferedImage.TYPE_USHORT_GRAY );
+        data.flip();
         
-        for ( int i = 0; i < sliceBuffer.getHeight(); i++ ) {
-    	    for ( int j = 0; j < sliceBuffer.getWidth(); j++ ) {
-        		int pixel, pixelHigh, pixelLow;
-        		try {
-        		    pixelHigh = imageFile.read();
-        		    pixelLow = imageFile.read();
-        		    pixel = pixelHigh << 4 | pixelLow >> 4;
-        		    
-        		    sliceBuffer.setRGB( j, i, pixel << 16 | pixel << 8 | pixel);
-
-        		}
-        		catch (IOException e) {
-        		    System.err.print("IO error readin byte: ");
-        		    System.err.println(e.getMessage());
-        		    System.exit(2);
-        		}
-    	    }
-    	}
+        AcrHeader header = AcrHeader.parse(data);
+        BufferedImage sliceBuffer = createGrayImage(header.getColumns(), 
+                                header.getRows(), header.getBitsStored());
+        short[] samples = ((DataBufferUShort) sliceBuffer.getRaster()
+                                    .getDataBuffer()).getData();
+        
+        ByteBuffer pixels = data.duplicate().order(header.getByteOrder());
+        int bytes = header.getBitsAllocated() / 8;
+        if (header.getPixelOffset() > pixels.limit())
+            throw new EOFException("file ends before the pixel data at " 
+                        + header.getPixelOffset());
+        pixels.position(header.getPixelOffset());
+        if (pixels.remaining() < (long) samples.length * bytes)
+            throw new EOFException("pixel data ends after " 
+                        + pixels.remaining() + " bytes");
+        
+        // move the stored bits of each sample down to bit 0
+        int shift = header.getHighBit() + 1 - header.getBitsStored();
+        int mask = (1 << header.getBitsStored()) - 1;
+        if (bytes == 2) {
+            pixels.asShortBuffer().get(samples);
+            for (int i = 0; i < samples.length; i++)
+                samples[i] = (short) ((samples[i] & 0xFFFF) >>> shift & mask);
+        } else {
+            for (int i = 0; i < samples.length; i++)
+                samples[i] = (short) ((pixels.get() & 0xFF) >>> shift & mask);
+        }
         
         return sliceBuffer;
     }
+    
+    /**
+     * Creates a single channel grey image whose samples use the given
+     * number of bits, so that the stored values are the original
+     * intensities and still display at full contrast.
+     * @param width the image width
+     * @param height the image height
+     * @param bits the significant bits per sample, at most 16
+     * @return the new image
+     * @auther Jeffrey Haines
+     */
+    static BufferedImage createGrayImage(int width, int height, int bits) {
+        ColorModel model = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_GRAY), new int[] {bits}, 
+                false, false, Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+        return new BufferedImage(model, 
+                model.createCompatibleWritableRaster(width, height), false, null);
+    }
 }
\ No newline at end of file
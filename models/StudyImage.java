@@ -1,16 +1,24 @@
 package medicalimageviewer.models;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The Image class provides the image file and associates it with a name.
+ * An image is either held in memory for its whole life, or refers to its
+ * source file and is decoded on demand through the study's image cache.
  * 
  * @author Jeffrey Haines
  */
 public class StudyImage {
     private String imageName;   // e.g. 1.jpeg
     private int[] resolution;   // [height, width]
-    private BufferedImage image;
+    private BufferedImage image;    // set when the image is held in memory
+    private final File source;      // set when the image is decoded on demand
+    private final ImageCache cache;
     
     /**
      * Image File.
@@ -25,20 +33,69 @@ public class StudyImage {
         this.resolution = new int[2];
         this.resolution = resolution;
         this.image = image;   
+        this.source = null;
+        this.cache = null;
     }
     
     /**
-     * Get the Image File.
+     * Lazily loaded Image File. Only the file reference and resolution are
+     * kept, the pixels are decoded on the first call to getImage and kept in
+     * the given cache for as long as it has room for them.
+     * 
+     * @param name e.g. 1.jpeg, where 1 is the name.
+     * @param resolution [height, width]
+     * @param source the file the image is decoded from
+     * @param cache the cache holding recently decoded images
+     * @author Jeffrey Haines
+     */
+    public StudyImage(String name, int[] resolution, File source, ImageCache cache) {
+        this.imageName = name;
+        this.resolution = resolution;
+        this.source = source;
+        this.cache = cache;
+    }
+    
+    /**
+     * Get the Image File. If the source file can no longer be decoded, for
+     * example because it was deleted or replaced after the study was opened,
+     * the failure is logged and a black image of the image's resolution
+     * stands in for it. The stand in is cached like a decoded image, so the
+     * file is tried again once it has been evicted.
      * 
      * @return returns the study image
      * @author Jeffrey Haines
      */
     public BufferedImage getImage() {
-        return image; 
+        if (image != null || source == null)
+            return image;
+        
+        BufferedImage decoded = cache.get(this);
+        if (decoded == null) {
+            try {
+                decoded = Study.readImage(source);
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(StudyImage.class.getName()).log(Level.SEVERE, 
+                            "Could not read " + source, ex);
+                decoded = new BufferedImage(Math.max(1, resolution[1]), 
+                            Math.max(1, resolution[0]), BufferedImage.TYPE_BYTE_GRAY);
+            }
+            cache.put(this, decoded);
+        }
+        return decoded; 
+    }
+    
+    /**
+     * Get the file the image is decoded from.
+     * 
+     * @return the source file, or null if the image is held in memory
+     * @author Jeffrey Haines
+     */
+    public File getSource() {
+        return source;
     }
     
     /**
-     * Set the Image File.
+     * Set the Image File. The image is held in memory from then on.
      * 
      * @param image the new image
      * @author Jeffrey Haines
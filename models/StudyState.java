@@ -0,0 +1,237 @@
+package medicalimageviewer.models;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import medicalimageviewer.models.iterator.*;
+
+/**
+ * The StudyState class reads and writes a study's .sdy file, which holds the
+ * view mode and the position of every iterator.
+ *
+ * The file is a short big endian record: a magic number and a format
+ * version, the mode, the number of iterators, then each iterator as a one
+ * byte kind followed by its index and, for window iterators, the window.
+ *
+ * Files written by older versions of the viewer hold a serialized iterator
+ * list instead. They are recognised by the serialization stream magic,
+ * read once and rewritten in the current format.
+ *
+ * @author Jeffrey Haines
+ */
+final class StudyState {
+    static final String EXTENSION = ".sdy";
+
+    private static final int MAGIC = 0x4D495653;    // "MIVS"
+    private static final int VERSION = 1;
+    private static final int SERIALIZED = 0xACED;   // ObjectOutputStream magic
+    // the only classes an old file may hold
+    private static final ObjectInputFilter SERIALIZED_CLASSES = ObjectInputFilter.Config.createFilter(
+            "java.util.ArrayList;java.lang.Object;java.lang.Integer;java.lang.Number;"
+            + "medicalimageviewer.models.iterator.*;!*");
+
+    // iterator kinds
+    private static final byte SINGLE = 'S';
+    private static final byte QUAD = 'Q';
+    private static final byte WINDOW = 'W';
+    private static final byte SAG = 'X';
+    private static final byte COR = 'Y';
+
+    private final int mode;
+    private final ArrayList<StudyImageIterator> iterators;
+
+    /**
+     * Study State.
+     * @param mode the view mode
+     * @param iterators the iterators
+     * @author Jeffrey Haines
+     */
+    StudyState(int mode, ArrayList<StudyImageIterator> iterators) {
+        this.mode = mode;
+        this.iterators = iterators;
+    }
+
+    /**
+     * Writes a study's state to its .sdy file.
+     * @param file the .sdy file
+     * @param mode the view mode
+     * @param iterators the iterators
+     * @throws IOException if the file could not be written, or an iterator
+     *         is of a kind the format cannot hold
+     * @author Jeffrey Haines
+     */
+    static void write(File file, int mode, List<StudyImageIterator> iterators)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(mode);
+        out.writeShort(iterators.size());
+        for (StudyImageIterator it : iterators) {
+            byte kind = kind(it);
+            if (kind == 0)
+                throw new IOException("cannot save iterator " + it.getClass().getName());
+            out.writeByte(kind);
+            out.writeInt(it.getIndex());
+            if (it instanceof WindowImageIterator) {
+                out.writeInt(((WindowImageIterator) it).getMin());
+                out.writeInt(((WindowImageIterator) it).getMax());
+            }
+        }
+        out.flush();
+        Files.write(file.toPath(), bytes.toByteArray());
+    }
+
+    /**
+     * Takes a snapshot of a study's state holding exactly what write stores,
+     * so two snapshots are equal when the files they would write are.
+     * @param mode the view mode
+     * @param iterators the iterators
+     * @return the snapshot
+     * @author Jeffrey Haines
+     */
+    static int[] snapshot(int mode, List<StudyImageIterator> iterators) {
+        int[] state = new int[2 + 4 * iterators.size()];
+        int n = 0;
+        state[n++] = mode;
+        state[n++] = iterators.size();
+        for (StudyImageIterator it : iterators) {
+            state[n++] = kind(it);
+            state[n++] = it.getIndex();
+            if (it instanceof WindowImageIterator) {
+                state[n++] = ((WindowImageIterator) it).getMin();
+                state[n++] = ((WindowImageIterator) it).getMax();
+            }
+        }
+        return n == state.length ? state : Arrays.copyOf(state, n);
+    }
+
+    /**
+     * Gets the kind an iterator is stored as.
+     * @param it the iterator
+     * @return the kind, or 0 if the format cannot hold the iterator
+     * @author Jeffrey Haines
+     */
+    private static byte kind(StudyImageIterator it) {
+        if (it instanceof SingleImageIterator)
+            return SINGLE;
+        else if (it instanceof QuadImageIterator)
+            return QUAD;
+        else if (it instanceof WindowImageIterator)
+            return WINDOW;
+        else if (it instanceof SagImageIterator)
+            return SAG;
+        else if (it instanceof CorImageIterator)
+            return COR;
+        return 0;
+    }
+
+    /**
+     * Reads a study's state from its .sdy file, migrating a file written by
+     * an older version of the viewer to the current format.
+     * @param file the .sdy file
+     * @param study the study the iterators move through
+     * @return the state
+     * @throws IOException if the file could not be read or is not a study
+     *         state file
+     * @author Jeffrey Haines
+     */
+    static StudyState read(File file, Study study) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        if (data.length >= 2 && ((data[0] & 0xFF) << 8 | (data[1] & 0xFF)) == SERIALIZED) {
+            StudyState state = readSerialized(data);
+            // older versions gave these the wrong number of positions
+            for (int i = 0; i < state.iterators.size(); i++) {
+                StudyImageIterator it = state.iterators.get(i);
+                if (it instanceof SagImageIterator)
+                    state.iterators.set(i, new SagImageIterator(study, it.getIndex()));
+                else if (it instanceof CorImageIterator)
+                    state.iterators.set(i, new CorImageIterator(study, it.getIndex()));
+            }
+            try {
+                write(file, state.mode, state.iterators);
+            } catch (IOException ex) {
+                Logger.getLogger(StudyState.class.getName()).log(Level.WARNING,
+                        "Could not migrate " + file, ex);
+            }
+            return state;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (data.length < 12 || in.readInt() != MAGIC)
+            throw new IOException("not a study state file");
+        int version = in.readUnsignedShort();
+        if (version != VERSION)
+            throw new IOException("unsupported study state version " + version);
+        int mode = in.readInt();
+        int count = in.readUnsignedShort();
+        ArrayList<StudyImageIterator> iterators = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte kind = in.readByte();
+            int index = in.readInt();
+            switch (kind) {
+                case SINGLE:    iterators.add(new SingleImageIterator(index));
+                                break;
+                case QUAD:      iterators.add(new QuadImageIterator(index));
+                                break;
+                case WINDOW:    iterators.add(new WindowImageIterator(index, in.readInt(), in.readInt()));
+                                break;
+                case SAG:       iterators.add(new SagImageIterator(study, index));
+                                break;
+                case COR:       iterators.add(new CorImageIterator(study, index));
+                                break;
+                default:        throw new IOException("unknown iterator kind " + kind);
+            }
+        }
+        return new StudyState(mode, iterators);
+    }
+
+    /**
+     * Reads a .sdy file holding a serialized iterator list and mode.
+     * @param data the contents of the file
+     * @return the state
+     * @throws IOException if the file could not be deserialized
+     * @author Jeffrey Haines
+     */
+    @SuppressWarnings("unchecked")
+    private static StudyState readSerialized(byte[] data) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            in.setObjectInputFilter(SERIALIZED_CLASSES);
+            ArrayList<StudyImageIterator> iterators = (ArrayList<StudyImageIterator>) in.readObject();
+            int mode = (int) in.readObject();
+            return new StudyState(mode, iterators);
+        } catch (ClassNotFoundException | ClassCastException ex) {
+            throw new IOException("not a study state file", ex);
+        }
+    }
+
+    /**
+     * Gets the view mode.
+     * @return the mode
+     * @author Jeffrey Haines
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the iterators.
+     * @return the iterators
+     * @author Jeffrey Haines
+     */
+    public ArrayList<StudyImageIterator> getIterators() {
+        return iterators;
+    }
+}
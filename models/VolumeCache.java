@@ -0,0 +1,226 @@
+package medicalimageviewer.models;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The VolumeCache class keeps the reconstruction volume of a study in a raw
+ * volume file next to the study's .sdy file. The file is memory mapped, so
+ * reopening an unchanged study neither decodes its slices nor copies the
+ * volume onto the heap.
+ *
+ * The file holds a fixed size header followed by the little endian grey
+ * values in the order Reconstruction stores them. The header records a key
+ * computed from the names, sizes and modification times of the slice files,
+ * so a volume file is ignored as soon as any slice changes.
+ *
+ * A volume file is never rewritten in place, since another study may have
+ * it mapped. A new volume is built in a temporary file next to it, which
+ * then replaces the old file in one move.
+ *
+ * @author Jeffrey Haines
+ */
+public class VolumeCache {
+    static final String EXTENSION = ".vol";
+
+    private static final int MAGIC = 0x4D495656;    // "MIVV"
+    private static final int VERSION = 2;  // 2: 8 bit grey slices stored as displayed
+    private static final int HEADER_SIZE = 64;
+
+    // header field offsets
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int KEY_AT = 8;
+    private static final int X_AT = 16;
+    private static final int Y_AT = 20;
+    private static final int Z_AT = 24;
+    private static final int BITS_AT = 28;
+
+    private VolumeCache() {
+    }
+
+    /**
+     * Computes the key identifying a set of slice files.
+     * @param files the slice files, in slice order
+     * @return a 64 bit FNV-1a hash of each file's name, size and mtime
+     * @author Jeffrey Haines
+     */
+    static long key(File[] files) {
+        long hash = 0xCBF29CE484222325L;
+        for (File f : files) {
+            String entry = f.getName() + ':' + f.length() + ':' + f.lastModified() + '\n';
+            for (byte b : entry.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xFF;
+                hash *= 0x100000001B3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Opens the volume stored in a volume file.
+     * @param file the volume file
+     * @param key the key of the current slice files
+     * @return the mapped reconstruction, or null if the file is missing,
+     *         incomplete, damaged or was built from different slices
+     * @author Jeffrey Haines
+     */
+    static Reconstruction read(File file, long key) {
+        if (!file.isFile())
+            return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE)
+                return null;
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt(MAGIC_AT) != MAGIC || map.getInt(VERSION_AT) != VERSION
+                    || map.getLong(KEY_AT) != key)
+                return null;
+
+            int xDims = map.getInt(X_AT);
+            int yDims = map.getInt(Y_AT);
+            int zDims = map.getInt(Z_AT);
+            int bits = map.getInt(BITS_AT);
+            if (xDims <= 0 || yDims <= 0 || zDims <= 0 || bits <= 0 || bits > 16
+                    || channel.size() != HEADER_SIZE + 2L * xDims * yDims * zDims)
+                return null;
+
+            map.position(HEADER_SIZE);
+            return new Reconstruction(map.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer(),
+                    xDims, yDims, zDims, bits);
+        } catch (IOException ex) {
+            Logger.getLogger(VolumeCache.class.getName()).log(Level.WARNING,
+                    "Could not read volume file " + file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Starts building the volume of a study straight into a mapped
+     * temporary file in the directory of the volume file. The slices are
+     * filled in through the returned output's reconstruction as they are
+     * decoded, and commit completes the header and moves the file into
+     * place, so neither an interrupted build nor a reader of the old file
+     * ever sees a partly written volume.
+     * @param file the volume file to write
+     * @param xDims the width of a slice
+     * @param yDims the height of a slice
+     * @param zDims the number of slices
+     * @return the volume being built, or null if the file could not be
+     *         created, in which case the volume has to be built on the heap
+     * @author Jeffrey Haines
+     */
+    static Output create(File file, int xDims, int yDims, int zDims) {
+        long voxels = (long) xDims * yDims * zDims;
+        File temp = null;
+        try {
+            temp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(),
+                    file.getName(), ".tmp").toFile();
+            try (FileChannel channel = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_SIZE + 2 * voxels);
+                map.order(ByteOrder.LITTLE_ENDIAN);
+                map.position(HEADER_SIZE);
+                return new Output(file, temp, map, new Reconstruction(xDims, yDims, zDims,
+                        map.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer()));
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            Logger.getLogger(VolumeCache.class.getName()).log(Level.WARNING,
+                    "Could not write volume file " + file, ex);
+            if (temp != null && !temp.delete())
+                temp.deleteOnExit();
+            return null;
+        }
+    }
+
+    /**
+     * A volume file that is being built. Its grey values are written through
+     * the mapped reconstruction, and commit completes the header and moves
+     * the file into place once every slice is in place.
+     *
+     * @author Jeffrey Haines
+     */
+    static final class Output {
+        private final File file;
+        private final File temp;
+        private final MappedByteBuffer map;
+        private final Reconstruction rec;
+
+        /**
+         * Output.
+         * @param file the volume file to replace
+         * @param temp the temporary file the volume is built in
+         * @param map the whole temporary file, mapped for writing
+         * @param rec the reconstruction stored in the file
+         * @author Jeffrey Haines
+         */
+        private Output(File file, File temp, MappedByteBuffer map, Reconstruction rec) {
+            this.file = file;
+            this.temp = temp;
+            this.map = map;
+            this.rec = rec;
+        }
+
+        /**
+         * Gets the reconstruction stored in the file.
+         * @return the reconstruction whose slices are still to be filled in
+         * @author Jeffrey Haines
+         */
+        Reconstruction getVolume() {
+            return rec;
+        }
+
+        /**
+         * Completes the header after the grey values were flushed, making
+         * the file valid for the slice files with the given key, and moves
+         * it over the volume file. The reconstruction stays mapped from it
+         * either way.
+         * @param key the key of the slice files
+         * @author Jeffrey Haines
+         */
+        void commit(long key) {
+            map.putInt(VERSION_AT, VERSION);
+            map.putLong(KEY_AT, key);
+            map.putInt(X_AT, rec.getXDims());
+            map.putInt(Y_AT, rec.getYDims());
+            map.putInt(Z_AT, rec.getZDims());
+            map.putInt(BITS_AT, rec.getBits());
+            map.force();
+            map.putInt(MAGIC_AT, MAGIC);
+            map.force();
+            try {
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(VolumeCache.class.getName()).log(Level.WARNING,
+                        "Could not write volume file " + file, ex);
+                discard();
+            }
+        }
+
+        /**
+         * Gives up on the volume file, leaving the one already there
+         * untouched. The reconstruction can still be used.
+         * @author Jeffrey Haines
+         */
+        void discard() {
+            if (temp.exists() && !temp.delete())
+                temp.deleteOnExit();
+        }
+    }
+}
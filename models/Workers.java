@@ -0,0 +1,71 @@
+package medicalimageviewer.models;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Workers class owns the bounded pool of background threads shared by
+ * the study loading code. The pool is sized to the number of available
+ * processors so decoding a study keeps every core busy without
+ * oversubscribing the machine.
+ *
+ * Tasks submitted to the pool must not themselves block on other tasks in
+ * the pool, otherwise a full pool can deadlock.
+ *
+ * @author Jeffrey Haines
+ */
+public final class Workers {
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static ExecutorService pool;
+
+    private Workers() {
+    }
+
+    /**
+     * Gets the shared worker pool, creating it on first use.
+     * @return the shared executor
+     * @author Jeffrey Haines
+     */
+    public static synchronized ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "miv-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Gets the number of threads in the shared pool.
+     * @return the pool size
+     * @author Jeffrey Haines
+     */
+    public static int size() {
+        return THREADS;
+    }
+
+    /**
+     * Runs every task on the shared pool and waits for all of them.
+     * The returned futures are in the same order as the tasks.
+     * @param tasks the tasks to run
+     * @return the completed futures, in task order
+     * @throws InterruptedException if interrupted while waiting
+     * @author Jeffrey Haines
+     */
+    public static <T> List<Future<T>> invokeAll(List<? extends Callable<T>> tasks)
+            throws InterruptedException {
+        return pool().invokeAll(tasks);
+    }
+}
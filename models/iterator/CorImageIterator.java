@@ -11,7 +11,10 @@ import medicalimageviewer.models.Study;
  * @author Jeffrey Haines
  */
 public class CorImageIterator implements StudyImageIterator, Serializable {
+    private static final long serialVersionUID = -6623026237853302973L;
+    private static final int LOOKAHEAD = 2;   // images to prepare on each side
     private int index;
+    private transient long version;    // see getVersion, 0 until first asked
     private int size;
 
     /**
@@ -21,7 +24,7 @@ public class CorImageIterator implements StudyImageIterator, Serializable {
      */
     public CorImageIterator(Study study) {
         this.index = 0;
-        this.size = study.getStudyImages().get(0).getResolution()[1];
+        this.size = study.getRec().getYDims();
     }
     
     /**
@@ -32,7 +35,7 @@ public class CorImageIterator implements StudyImageIterator, Serializable {
      */
     public CorImageIterator(Study study, int index) {
         this.index = index;
-        this.size = study.getStudyImages().get(0).getResolution()[1];
+        this.size = study.getRec().getYDims();
     }
     
     /**
@@ -46,6 +49,7 @@ public class CorImageIterator implements StudyImageIterator, Serializable {
         if(index == this.size - 1)
             return false;
         index++;
+        version = Versions.next();
         return true;
     }
 
@@ -59,6 +63,7 @@ public class CorImageIterator implements StudyImageIterator, Serializable {
         if(index == 0)
             return false;
         index--;
+        version = Versions.next();
         return true;
     }
 
@@ -71,8 +76,21 @@ public class CorImageIterator implements StudyImageIterator, Serializable {
      */
     @Override
     public BufferedImage[] getImages(Study study) {
-        BufferedImage[] set = new BufferedImage[1];
-        set[0] = study.getRec().construct2D('y', index);
+        return getImages(study, new BufferedImage[1]);
+    }
+    
+    /**
+     * Provides the reconstructed image in a caller supplied array. The image
+     * comes from the reconstruction's slice cache and is shared, so it must
+     * not be drawn on
+     * @param study the study that contains the images
+     * @param set the array to fill
+     * @return Returns set, holding the reconstructed image
+     * @author Jeffrey Haines
+     */
+    @Override
+    public BufferedImage[] getImages(Study study, BufferedImage[] set) {
+        set[0] = study.getRec().getSlice('y', index);
         return set;
     }
     
@@ -85,4 +103,38 @@ public class CorImageIterator implements StudyImageIterator, Serializable {
     public int getIndex() {
         return index;
     }
+    
+    /**
+     * moves the iterator to an index
+     * @param index the new index
+     * @author Jeffrey Haines
+     */
+    @Override
+    public void setIndex(int index) {
+        this.index = index;
+        version = Versions.next();
+    }
+    
+    /**
+     * Gets the version of the iterator, which changes whenever it moves
+     * @return version
+     * @author Jeffrey Haines
+     */
+    @Override
+    public long getVersion() {
+        if (version == 0)
+            version = Versions.next();
+        return version;
+    }
+    
+    /**
+     * Gets the neighbouring coronal slices
+     * @param study the study that contains the images
+     * @return the slices within two steps of the current one
+     * @author Jeffrey Haines
+     */
+    @Override
+    public Lookahead getLookahead(Study study) {
+        return Lookahead.around('y', index, LOOKAHEAD, size);
+    }
 }
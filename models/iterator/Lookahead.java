@@ -0,0 +1,69 @@
+package medicalimageviewer.models.iterator;
+
+/**
+ * The Lookahead class lists the images an iterator is likely to show next,
+ * so they can be read or rendered before the user asks for them.
+ *
+ * Indexes along the 'z' axis are images of the study; indexes along 'x' and
+ * 'y' are sagittal and coronal slices of its reconstruction.
+ *
+ * @author Jeffrey Haines
+ */
+public class Lookahead {
+    private final char axis;
+    private final int[] indexes;
+
+    /**
+     * Lookahead.
+     * @param axis the axis the indexes are along, 'x', 'y' or 'z'
+     * @param indexes the indexes, most likely first
+     * @author Jeffrey Haines
+     */
+    public Lookahead(char axis, int... indexes) {
+        this.axis = axis;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Lists the indexes within range around an index, nearest first and
+     * in the forward direction before the backward one at each distance.
+     * @param axis the axis the indexes are along
+     * @param index the current index
+     * @param depth how many indexes to list on each side
+     * @param size the number of indexes along the axis
+     * @return the lookahead
+     * @author Jeffrey Haines
+     */
+    static Lookahead around(char axis, int index, int depth, int size) {
+        int[] indexes = new int[2 * depth];
+        int n = 0;
+        for (int d = 1; d <= depth; d++) {
+            if (index + d < size)
+                indexes[n++] = index + d;
+            if (index - d >= 0)
+                indexes[n++] = index - d;
+        }
+        int[] found = new int[n];
+        System.arraycopy(indexes, 0, found, 0, n);
+        return new Lookahead(axis, found);
+    }
+
+    /**
+     * Gets the axis the indexes are along.
+     * @return 'z' for images of the study, 'x' or 'y' for reconstructed
+     *         slices
+     * @author Jeffrey Haines
+     */
+    public char getAxis() {
+        return axis;
+    }
+
+    /**
+     * Gets the indexes, most likely first.
+     * @return the indexes
+     * @author Jeffrey Haines
+     */
+    public int[] getIndexes() {
+        return indexes;
+    }
+}
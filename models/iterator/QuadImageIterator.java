@@ -2,6 +2,7 @@ package medicalimageviewer.models.iterator;
 
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
+import java.util.Arrays;
 import medicalimageviewer.models.Study;
 
 /**
@@ -11,7 +12,9 @@ import medicalimageviewer.models.Study;
  * @author Jeffrey Haines
  */
 public class QuadImageIterator implements StudyImageIterator, Serializable {
+    private static final long serialVersionUID = 9018551241503127016L;
     private int index;
+    private transient long version;    // see getVersion, 0 until first asked
 
     /**
      * The constructor for the quad image iterator
@@ -41,6 +44,7 @@ public class QuadImageIterator implements StudyImageIterator, Serializable {
         if(index+4 >= study.getStudyImages().size())
             return false;
         index += 4;
+        version = Versions.next();
         return true;
     }
 
@@ -54,6 +58,7 @@ public class QuadImageIterator implements StudyImageIterator, Serializable {
         if(index-4 < 0)
             return false;
         index -= 4;
+        version = Versions.next();
         return true;
     }
 
@@ -65,7 +70,18 @@ public class QuadImageIterator implements StudyImageIterator, Serializable {
      */
     @Override
     public BufferedImage[] getImages(Study study) {
-        BufferedImage[] set = new BufferedImage[4];
+        return getImages(study, new BufferedImage[4]);
+    }
+    
+    /**
+     * Gets the next 4 images in a caller supplied array
+     * @param study the study class the contains the images that are currently being viewed
+     * @param set the array to fill
+     * @return set, holding the 4 images
+     * @author Jeffrey Haines
+     */
+    @Override
+    public BufferedImage[] getImages(Study study, BufferedImage[] set) {
         set[0] = getOrNull(study, index);
         set[1] = getOrNull(study, index+1);
         set[2] = getOrNull(study, index+2);
@@ -82,6 +98,17 @@ public class QuadImageIterator implements StudyImageIterator, Serializable {
     public int getIndex() {
         return index;
     }
+    
+    /**
+     * Moves the iterator to the set of four images holding an image
+     * @param index the index of an image in the set
+     * @author Jeffrey Haines
+     */
+    @Override
+    public void setIndex(int index) {
+        this.index = (index/4)*4; // Round down to nearest 4th
+        version = Versions.next();
+    }
 
     /**
      * Get or null gets the next image in the study or sets it to null if there
@@ -97,4 +124,34 @@ public class QuadImageIterator implements StudyImageIterator, Serializable {
         else
             return study.getStudyImages().get(i).getImage();
     }
+    
+    /**
+     * Gets the version of the iterator, which changes whenever it moves
+     * @return version
+     * @author Jeffrey Haines
+     */
+    @Override
+    public long getVersion() {
+        if (version == 0)
+            version = Versions.next();
+        return version;
+    }
+    
+    /**
+     * Gets the images of the next page, then those of the previous page
+     * @param study the study that contains the images
+     * @return the images of the neighbouring pages
+     * @author Jeffrey Haines
+     */
+    @Override
+    public Lookahead getLookahead(Study study) {
+        int size = study.getStudyImages().size();
+        int[] indexes = new int[8];
+        int n = 0;
+        for (int i = index + 4; i < index + 8 && i < size; i++)
+            indexes[n++] = i;
+        for (int i = Math.max(0, index - 4); i < index; i++)
+            indexes[n++] = i;
+        return new Lookahead('z', Arrays.copyOf(indexes, n));
+    }
 }
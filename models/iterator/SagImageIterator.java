@@ -11,7 +11,10 @@ import medicalimageviewer.models.Study;
  * @author Jeffrey Haines
  */
 public class SagImageIterator implements StudyImageIterator, Serializable {
+    private static final long serialVersionUID = 455846094867836527L;
+    private static final int LOOKAHEAD = 2;   // images to prepare on each side
     private int index;
+    private transient long version;    // see getVersion, 0 until first asked
     private int size; 
     
     
@@ -22,7 +25,7 @@ public class SagImageIterator implements StudyImageIterator, Serializable {
      */
     public SagImageIterator(Study study) {
         this.index = 0;
-        this.size = study.getStudyImages().get(0).getResolution()[0];
+        this.size = study.getRec().getXDims();
     }
     
     /**
@@ -33,7 +36,7 @@ public class SagImageIterator implements StudyImageIterator, Serializable {
      */
     public SagImageIterator(Study study, int index) {
         this.index = index;
-        this.size = study.getStudyImages().get(0).getResolution()[0];
+        this.size = study.getRec().getXDims();
     }
     
     /**
@@ -47,6 +50,7 @@ public class SagImageIterator implements StudyImageIterator, Serializable {
         if(index == this.size - 1)
             return false;
         index++;
+        version = Versions.next();
         return true;
     }
 
@@ -60,6 +64,7 @@ public class SagImageIterator implements StudyImageIterator, Serializable {
         if(index == 0)
             return false;
         index--;
+        version = Versions.next();
         return true;
     }
 
@@ -71,8 +76,21 @@ public class SagImageIterator implements StudyImageIterator, Serializable {
      */
     @Override
     public BufferedImage[] getImages(Study study) {
-        BufferedImage[] set = new BufferedImage[1];
-        set[0] = study.getRec().construct2D('x', index);
+        return getImages(study, new BufferedImage[1]);
+    }
+    
+    /**
+     * Provides the reconstructed image in a caller supplied array. The image
+     * comes from the reconstruction's slice cache and is shared, so it must
+     * not be drawn on
+     * @param study the study that contains the images
+     * @param set the array to fill
+     * @return returns set, holding the reconstructed image
+     * @author Jeffrey Haines
+     */
+    @Override
+    public BufferedImage[] getImages(Study study, BufferedImage[] set) {
+        set[0] = study.getRec().getSlice('x', index);
         return set;
     }
     
@@ -85,4 +103,38 @@ public class SagImageIterator implements StudyImageIterator, Serializable {
     public int getIndex() {
         return index;
     }
+    
+    /**
+     * moves the iterator to an index
+     * @param index the index
+     * @author Jeffrey Haines
+     */
+    @Override
+    public void setIndex(int index) {
+        this.index = index;
+        version = Versions.next();
+    }
+    
+    /**
+     * Gets the version of the iterator, which changes whenever it moves
+     * @return version
+     * @author Jeffrey Haines
+     */
+    @Override
+    public long getVersion() {
+        if (version == 0)
+            version = Versions.next();
+        return version;
+    }
+    
+    /**
+     * Gets the neighbouring sagittal slices
+     * @param study the study that contains the images
+     * @return the slices within two steps of the current one
+     * @author Jeffrey Haines
+     */
+    @Override
+    public Lookahead getLookahead(Study study) {
+        return Lookahead.around('x', index, LOOKAHEAD, size);
+    }
 }
@@ -11,7 +11,10 @@ import medicalimageviewer.models.Study;
  * @author Jeffrey Haines
  */
 public class SingleImageIterator implements StudyImageIterator, Serializable {
+    private static final long serialVersionUID = -2370081815483980115L;
+    private static final int LOOKAHEAD = 2;   // images to prepare on each side
     private int index;
+    private transient long version;    // see getVersion, 0 until first asked
     
     /**
      * Creates a SingleImageIterator and starts it at the beginning of the list
@@ -41,6 +44,7 @@ public class SingleImageIterator implements StudyImageIterator, Serializable {
         if(index == study.getStudyImages().size()-1)
             return false;
         index++;
+        version = Versions.next();
         return true;
     }
     
@@ -54,6 +58,7 @@ public class SingleImageIterator implements StudyImageIterator, Serializable {
         if(index == 0)
             return false;
         index--;
+        version = Versions.next();
         return true;
     }
     
@@ -66,7 +71,18 @@ public class SingleImageIterator implements StudyImageIterator, Serializable {
      */
     @Override
     public BufferedImage[] getImages(Study study) {
-        BufferedImage[] set = new BufferedImage[1];
+        return getImages(study, new BufferedImage[1]);
+    }
+    
+    /**
+     * Provides the current image in a caller supplied array
+     * @param study The study that is currently loaded into the program
+     * @param set the array to fill
+     * @return returns set, holding the image
+     * @author Jeffrey Haines
+     */
+    @Override
+    public BufferedImage[] getImages(Study study, BufferedImage[] set) {
         set[0] = study.getStudyImages().get(index).getImage();
         return set;
     }
@@ -80,4 +96,38 @@ public class SingleImageIterator implements StudyImageIterator, Serializable {
     public int getIndex() {
         return index;
     }
+    
+    /**
+     * moves the iterator to a picture
+     * @param index the index of the picture
+     * @author Jeffrey Haines
+     */
+    @Override
+    public void setIndex(int index) {
+        this.index = index;
+        version = Versions.next();
+    }
+    
+    /**
+     * Gets the version of the iterator, which changes whenever it moves
+     * @return version
+     * @author Jeffrey Haines
+     */
+    @Override
+    public long getVersion() {
+        if (version == 0)
+            version = Versions.next();
+        return version;
+    }
+    
+    /**
+     * Gets the neighbouring images, which a wheel step or a click shows next
+     * @param study the study that contains the images
+     * @return the images within two steps of the current one
+     * @author Jeffrey Haines
+     */
+    @Override
+    public Lookahead getLookahead(Study study) {
+        return Lookahead.around('z', index, LOOKAHEAD, study.getStudyImages().size());
+    }
 }
@@ -6,6 +6,10 @@ import medicalimageviewer.models.Study;
 /**
  * Study Image Iterator
  * 
+ * The serializable iterators declare the serialVersionUID their classes
+ * had before it was made explicit, so .sdy files written by older versions
+ * can still be read and migrated by StudyState.
+ * 
  * @author Jeffrey Haines
  */
 public interface StudyImageIterator {
@@ -32,10 +36,49 @@ public interface StudyImageIterator {
      */
     public abstract BufferedImage[] getImages(Study study);
     
+    /**
+     * Returns the current image set in a caller supplied array. Images the
+     * iterator has to render, such as reconstructions and windowed images,
+     * are drawn into the images already held by the array when they have
+     * the right size, so passing the same array back on every call renders
+     * without allocating. An array should only ever be passed to iterators
+     * of one kind, since it may be left holding images owned by the study.
+     * @param study the study that contains the images
+     * @param set the array to fill, at least as long as the image set
+     * @return set, holding the image set. Items in here can be null
+     * @author Jeffrey Haines
+     */
+    public abstract BufferedImage[] getImages(Study study, BufferedImage[] set);
+    
     /**
      * Gets the index of the current image set
      * @return index
      * @author Jeffrey Haines
      */
     public abstract int getIndex();
+    
+    /**
+     * Moves the iterator to an image set
+     * @param index the index of the image set, as returned by getIndex
+     * @author Jeffrey Haines
+     */
+    public abstract void setIndex(int index);
+    
+    /**
+     * Gets the version of the iterator, which changes whenever the images
+     * it returns change. No two iterators share a version, so views can
+     * compare versions to decide whether a pane needs drawing again.
+     * @return version
+     * @author Jeffrey Haines
+     */
+    public abstract long getVersion();
+    
+    /**
+     * Gets the images the iterator is likely to show after the current
+     * ones, so they can be prepared in the background
+     * @param study the study that contains the images
+     * @return the lookahead, which may list no images
+     * @author Jeffrey Haines
+     */
+    public abstract Lookahead getLookahead(Study study);
 }
@@ -0,0 +1,27 @@
+package medicalimageviewer.models.iterator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Versions class hands out the version numbers iterators use to tell
+ * views that they have changed. Numbers are unique across every iterator,
+ * so a view can tell both a moved iterator and a replaced one from the
+ * iterator it last drew.
+ *
+ * @author Jeffrey Haines
+ */
+final class Versions {
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private Versions() {
+    }
+
+    /**
+     * Gets a version number that has not been handed out before.
+     * @return the new version
+     * @author Jeffrey Haines
+     */
+    static long next() {
+        return LAST.incrementAndGet();
+    }
+}
@@ -2,6 +2,7 @@ package medicalimageviewer.models.iterator;
 
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
+import medicalimageviewer.models.Reconstruction;
 import medicalimageviewer.models.Study;
 
 /**
@@ -11,24 +12,26 @@ import medicalimageviewer.models.Study;
  * @author Jeffrey Haines
  */
 public class WindowImageIterator implements StudyImageIterator, Serializable {
+    private static final long serialVersionUID = -6005150618530443433L;
     private int index;
+    private transient long version;    // see getVersion, 0 until first asked
     private int min;
     private int max;
 
     /**
      * Creates a WindowImageIterator and initializes it at the beginning of the
-     * list
+     * list, showing the full range of grey values
      * @author Jeffrey Haines
      */
     public WindowImageIterator() {
-        this.index = 0;
+        this(0, 0, Integer.MAX_VALUE);
     }
     
     /**
      * Creates a WindowImageIterator and initializes it at the specified index
      * @param index Index to start at
-     * @param min 
-     * @param max
+     * @param min the minimum intensity, as a grey value of the study
+     * @param max the maximum intensity, as a grey value of the study
      * @author Jeffrey Haines
      */
     public WindowImageIterator(int index, int min, int max) {
@@ -48,6 +51,7 @@ public class WindowImageIterator implements StudyImageIterator, Serializable {
         if(index == study.getStudyImages().size()-1)
             return false;
         index++;
+        version = Versions.next();
         return true;
     }
     
@@ -61,6 +65,7 @@ public class WindowImageIterator implements StudyImageIterator, Serializable {
         if(index == 0)
             return false;
         index--;
+        version = Versions.next();
         return true;
     }
 
@@ -72,11 +77,55 @@ public class WindowImageIterator implements StudyImageIterator, Serializable {
      */
     @Override
     public BufferedImage[] getImages(Study study) {
-        BufferedImage[] set = new BufferedImage[1];
-        set[0] = study.getRec().window('z', index, min, max);
+        return getImages(study, new BufferedImage[1]);
+    }
+    
+    /**
+     * Renders the windowed image into a caller supplied array, reusing the
+     * image it already holds
+     * @param study the study that contains the images that are being read in
+     * @param set the array to fill
+     * @return returns set, holding the windowed image
+     * @author Jeffrey Haines
+     */
+    @Override
+    public BufferedImage[] getImages(Study study, BufferedImage[] set) {
+        Reconstruction rec = study.getRec();
+        set[0] = rec.window('z', index, min, Math.min(max, rec.getMaxValue()), set[0]);
         return set;
     }
     
+    /**
+     * Gets the minimum intensity of the window
+     * @return the minimum as a grey value of the study
+     * @author Jeffrey Haines
+     */
+    public int getMin() {
+        return min;
+    }
+    
+    /**
+     * Gets the maximum intensity of the window
+     * @return the maximum as a grey value of the study
+     * @author Jeffrey Haines
+     */
+    public int getMax() {
+        return max;
+    }
+    
+    /**
+     * Changes the window, keeping the current index. Only the window lookup
+     * table is rebuilt when the image is next drawn.
+     * @param min the minimum intensity, as a grey value of the study
+     * @param max the maximum intensity, as a grey value of the study
+     * @author Jeffrey Haines
+     */
+    public void setWindow(int min, int max) {
+        this.min = min;
+        this.max = max;
+        version = Versions.next();
+    }
+    
     /**
      * Method for getting the index of the image currently in
      * @return returns the index as an int
@@ -86,4 +135,40 @@ public class WindowImageIterator implements StudyImageIterator, Serializable {
     public int getIndex() {
         return index;
     }
+    
+    /**
+     * Method for moving to an image
+     * @param index the index of the image
+     * @author Jeffrey Haines
+     */
+    @Override
+    public void setIndex(int index) {
+        this.index = index;
+        version = Versions.next();
+    }
+    
+    /**
+     * Gets the version of the iterator, which changes whenever it moves or
+     * its window changes
+     * @return version
+     * @author Jeffrey Haines
+     */
+    @Override
+    public long getVersion() {
+        if (version == 0)
+            version = Versions.next();
+        return version;
+    }
+    
+    /**
+     * Windowed images are drawn straight from the reconstruction, quickly
+     * enough that there is nothing worth preparing
+     * @param study the study that contains the images
+     * @return an empty lookahead
+     * @author Jeffrey Haines
+     */
+    @Override
+    public Lookahead getLookahead(Study study) {
+        return new Lookahead('z');
+    }
 }
@@ -0,0 +1,144 @@
+package medicalimageviewer.memento;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the undo and redo history.
+ *
+ * @author Jeffrey Haines
+ */
+class IteratorCareTakerTest {
+    /**
+     * Changes are undone newest first and redone in the order they were made.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void undoesAndRedoesInOrder() {
+        IteratorCareTaker history = new IteratorCareTaker();
+        IteratorMemento[] changes = changes(3);
+        for (IteratorMemento m : changes)
+            history.push(m);
+
+        assertSame(changes[2], history.undo());
+        assertSame(changes[1], history.undo());
+        assertSame(changes[1], history.redo());
+        assertSame(changes[2], history.redo());
+        assertNull(history.redo());
+        for (int i = 2; i >= 0; i--)
+            assertSame(changes[i], history.undo());
+        assertNull(history.undo());
+        assertSame(changes[0], history.redo());
+    }
+
+    /**
+     * A new change drops the changes that could have been redone.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void newChangesDropTheRedoHistory() {
+        IteratorCareTaker history = new IteratorCareTaker();
+        IteratorMemento[] changes = changes(4);
+        history.push(changes[0]);
+        history.push(changes[1]);
+        history.push(changes[2]);
+        history.undo();
+        history.undo();
+        history.push(changes[3]);
+
+        assertNull(history.redo());
+        assertSame(changes[3], history.undo());
+        assertSame(changes[0], history.undo());
+        assertNull(history.undo());
+    }
+
+    /**
+     * A full history drops its oldest change, also after wrapping around
+     * the ring several times.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void fullHistoryDropsTheOldestChange() {
+        IteratorCareTaker history = new IteratorCareTaker(3, IteratorCareTaker.DEFAULT_BYTES);
+        IteratorMemento[] changes = changes(8);
+        for (IteratorMemento m : changes)
+            history.push(m);
+
+        assertSame(changes[7], history.undo());
+        assertSame(changes[6], history.undo());
+        assertSame(changes[5], history.undo());
+        assertNull(history.undo());
+        assertSame(changes[5], history.redo());
+        assertSame(changes[6], history.redo());
+        assertSame(changes[7], history.redo());
+        assertNull(history.redo());
+    }
+
+    /**
+     * The number of changes kept is also bounded by the bytes allowed.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void historyFitsItsBytes() {
+        IteratorCareTaker history = new IteratorCareTaker(100, 2 * IteratorMemento.BYTES);
+        IteratorMemento[] changes = changes(5);
+        for (IteratorMemento m : changes)
+            history.push(m);
+
+        assertSame(changes[4], history.undo());
+        assertSame(changes[3], history.undo());
+        assertNull(history.undo());
+    }
+
+    /**
+     * Clearing forgets every change.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void clearForgetsEverything() {
+        IteratorCareTaker history = new IteratorCareTaker(2, IteratorCareTaker.DEFAULT_BYTES);
+        IteratorMemento[] changes = changes(3);
+        for (IteratorMemento m : changes)
+            history.push(m);
+        history.undo();
+        history.clear();
+
+        assertNull(history.undo());
+        assertNull(history.redo());
+        history.push(changes[0]);
+        assertSame(changes[0], history.undo());
+        assertNull(history.undo());
+    }
+
+    /**
+     * A memento gives the state before or after its change.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void mementosHoldBothStates() {
+        IteratorMemento m = new IteratorMemento(2, 0, 5, 10, 20, 1, 6, 11, 21);
+        assertEquals(2, m.getSlot());
+        assertEquals(0, m.getMode(false));
+        assertEquals(1, m.getMode(true));
+        assertEquals(5, m.getIndex(false));
+        assertEquals(6, m.getIndex(true));
+        assertEquals(10, m.getMin(false));
+        assertEquals(11, m.getMin(true));
+        assertEquals(20, m.getMax(false));
+        assertEquals(21, m.getMax(true));
+    }
+
+    /**
+     * Creates distinct changes moving slot 0 through successive indices.
+     * @author Jeffrey Haines
+     */
+    private static IteratorMemento[] changes(int count) {
+        IteratorMemento[] changes = new IteratorMemento[count];
+        for (int i = 0; i < count; i++)
+            changes[i] = new IteratorMemento(0, 0, i, 0, 0, 0, i + 1, 0, 0);
+        return changes;
+    }
+}
@@ -0,0 +1,113 @@
+package medicalimageviewer.models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+/**
+ * The AcrFiles class writes small ACR-NEMA slices for the tests, with 12 bit
+ * samples in 16 bit words whose values are given by sample.
+ *
+ * @author Jeffrey Haines
+ */
+final class AcrFiles {
+    private AcrFiles() {
+    }
+
+    /**
+     * Creates the contents of an ACR slice.
+     * @param order the byte order of the header and pixels
+     * @param rows the height of the slice
+     * @param columns the width of the slice
+     * @param z the index of the slice, which changes its samples
+     * @param identifying whether the header starts with group 0008
+     * @param privateGroups whether the header holds the private groups 0009
+     *        and 0019
+     * @return the file contents
+     * @author Jeffrey Haines
+     */
+    static byte[] slice(ByteOrder order, int rows, int columns, int z,
+                        boolean identifying, boolean privateGroups) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (identifying) {
+            element(out, order, 0x0008, 0x0000, int32(order, 20));
+            element(out, order, 0x0008, 0x0010, "ACR-NEMA 2.0".getBytes());
+        }
+        if (privateGroups) {
+            element(out, order, 0x0009, 0x0010, "PRIVATE ".getBytes());
+            element(out, order, 0x0019, 0x1001, new byte[6]);
+        }
+        element(out, order, 0x0028, 0x0010, int16(order, rows));
+        element(out, order, 0x0028, 0x0011, int16(order, columns));
+        element(out, order, 0x0028, 0x0100, int16(order, 16));
+        element(out, order, 0x0028, 0x0101, int16(order, 12));
+        element(out, order, 0x0028, 0x0102, int16(order, 11));
+        ByteBuffer pixels = ByteBuffer.allocate(2 * rows * columns).order(order);
+        for (int y = 0; y < rows; y++)
+            for (int x = 0; x < columns; x++)
+                pixels.putShort((short) sample(x, y, z));
+        element(out, order, 0x7FE0, 0x0010, pixels.array());
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a study of ACR slices named 1.acr, 2.acr and so on.
+     * @param dir the study directory, which is created
+     * @param slices the number of slices
+     * @param rows the height of a slice
+     * @param columns the width of a slice
+     * @return the study directory
+     * @throws IOException if a slice could not be written
+     * @author Jeffrey Haines
+     */
+    static File study(File dir, int slices, int rows, int columns) throws IOException {
+        Files.createDirectories(dir.toPath());
+        for (int z = 0; z < slices; z++)
+            Files.write(new File(dir, (z + 1) + ".acr").toPath(),
+                    slice(ByteOrder.LITTLE_ENDIAN, rows, columns, z, true, false));
+        return dir;
+    }
+
+    /**
+     * Gets the 12 bit sample of a voxel.
+     * @param x the column
+     * @param y the row
+     * @param z the slice
+     * @return the sample
+     * @author Jeffrey Haines
+     */
+    static int sample(int x, int y, int z) {
+        return (x * 31 + y * 7 + z * 101) & 0xFFF;
+    }
+
+    /**
+     * Writes one header element.
+     * @author Jeffrey Haines
+     */
+    private static void element(ByteArrayOutputStream out, ByteOrder order,
+                                int group, int element, byte[] value) {
+        ByteBuffer tag = ByteBuffer.allocate(8).order(order);
+        tag.putShort((short) group).putShort((short) element).putInt(value.length);
+        out.write(tag.array(), 0, 8);
+        out.write(value, 0, value.length);
+    }
+
+    /**
+     * Encodes a 16 bit value.
+     * @author Jeffrey Haines
+     */
+    private static byte[] int16(ByteOrder order, int v) {
+        return ByteBuffer.allocate(2).order(order).putShort((short) v).array();
+    }
+
+    /**
+     * Encodes a 32 bit value.
+     * @author Jeffrey Haines
+     */
+    private static byte[] int32(ByteOrder order, int v) {
+        return ByteBuffer.allocate(4).order(order).putInt(v).array();
+    }
+}
@@ -0,0 +1,158 @@
+package medicalimageviewer.models;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests reading ACR-NEMA headers and the slices behind them.
+ *
+ * @author Jeffrey Haines
+ */
+class AcrHeaderTest {
+    private static final ByteOrder[] ORDERS = {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN};
+
+    @TempDir
+    File dir;
+
+    /**
+     * Headers with private groups parse in either byte order, and the
+     * samples read back exactly.
+     * @throws IOException if a slice could not be read
+     * @author Jeffrey Haines
+     */
+    @Test
+    void readsPrivateGroupsInEitherOrder() throws IOException {
+        for (ByteOrder order : ORDERS) {
+            byte[] data = AcrFiles.slice(order, 6, 4, 0, true, true);
+            AcrHeader header = AcrHeader.parse(ByteBuffer.wrap(data));
+            assertEquals(order, header.getByteOrder());
+            assertEquals(6, header.getRows());
+            assertEquals(4, header.getColumns());
+            assertEquals(16, header.getBitsAllocated());
+            assertEquals(12, header.getBitsStored());
+            assertEquals(11, header.getHighBit());
+            assertEquals(data.length - 2 * 6 * 4, header.getPixelOffset());
+            assertSamples(read(data), 4, 6, 0);
+        }
+    }
+
+    /**
+     * Headers that do not start with group 0008 are recognised by their
+     * tag order.
+     * @throws IOException if a header could not be parsed
+     * @author Jeffrey Haines
+     */
+    @Test
+    void detectsOrderWithoutIdentifyingGroup() throws IOException {
+        for (ByteOrder order : ORDERS) {
+            byte[] data = AcrFiles.slice(order, 3, 3, 0, false, false);
+            assertEquals(order, AcrHeader.detectOrder(ByteBuffer.wrap(data)));
+            assertEquals(3, AcrHeader.parse(ByteBuffer.wrap(data)).getRows());
+        }
+    }
+
+    /**
+     * A non-square slice keeps its width and height.
+     * @throws IOException if the slice could not be read
+     * @author Jeffrey Haines
+     */
+    @Test
+    void readsNonSquareSlices() throws IOException {
+        BufferedImage image = read(AcrFiles.slice(ByteOrder.LITTLE_ENDIAN, 5, 9, 3, true, false));
+        assertEquals(9, image.getWidth());
+        assertEquals(5, image.getHeight());
+        assertEquals(12, Reconstruction.bitsOf(image));
+        assertSamples(image, 9, 5, 3);
+    }
+
+    /**
+     * A file without a header is read with the legacy layout.
+     * @throws IOException if the header could not be parsed
+     * @author Jeffrey Haines
+     */
+    @Test
+    void fallsBackToLegacyLayoutWithoutHeader() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(0x2000 + 2 * 256 * 256);
+        assertNull(AcrHeader.detectOrder(data));
+        AcrHeader header = AcrHeader.parse(data);
+        assertEquals(256, header.getRows());
+        assertEquals(256, header.getColumns());
+        assertEquals(0x2000, header.getPixelOffset());
+        assertEquals(ByteOrder.BIG_ENDIAN, header.getByteOrder());
+    }
+
+    /**
+     * A header that is there but cannot be parsed fails the slice instead
+     * of falling back to the legacy layout.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void rejectsDamagedHeaders() {
+        byte[] data = AcrFiles.slice(ByteOrder.LITTLE_ENDIAN, 4, 4, 0, true, true);
+        assertRejected(Arrays.copyOf(data, 60));
+
+        // swap the rows and columns elements so the tags are out of order
+        byte[] swapped = data.clone();
+        int rows = indexOf(swapped, new byte[] {0x28, 0, 0x10, 0});
+        System.arraycopy(data, rows + 10, swapped, rows, 10);
+        System.arraycopy(data, rows, swapped, rows + 10, 10);
+        assertRejected(swapped);
+    }
+
+    /**
+     * Checks that a header does not parse.
+     * @author Jeffrey Haines
+     */
+    private static void assertRejected(byte[] data) {
+        try {
+            AcrHeader.parse(ByteBuffer.wrap(data));
+            fail("damaged header was parsed");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * Reads a slice through readACR.
+     * @author Jeffrey Haines
+     */
+    private BufferedImage read(byte[] data) throws IOException {
+        File file = File.createTempFile("slice", ".acr", dir);
+        Files.write(file.toPath(), data);
+        return Study.readACR(file);
+    }
+
+    /**
+     * Checks every sample of a slice written by AcrFiles.
+     * @author Jeffrey Haines
+     */
+    private static void assertSamples(BufferedImage image, int width, int height, int z) {
+        int[] expected = new int[width * height];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                expected[y * width + x] = AcrFiles.sample(x, y, z);
+        assertArrayEquals(expected, image.getRaster().getSamples(0, 0, width, height, 0, (int[]) null));
+    }
+
+    /**
+     * Finds a byte sequence.
+     * @author Jeffrey Haines
+     */
+    private static int indexOf(byte[] data, byte[] part) {
+        for (int i = 0; i + part.length <= data.length; i++)
+            if (Arrays.equals(Arrays.copyOfRange(data, i, i + part.length), part))
+                return i;
+        throw new AssertionError("not found");
+    }
+}
@@ -0,0 +1,126 @@
+package medicalimageviewer.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the least recently used eviction of decoded slices.
+ *
+ * @author Jeffrey Haines
+ */
+class ImageCacheTest {
+    private static final int SIZE = 100;    // bytes of each image
+
+    /**
+     * Getting an image makes it the most recently used, so the image put
+     * before it is evicted first.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void evictsTheLeastRecentlyUsed() {
+        ImageCache cache = new ImageCache(3 * SIZE);
+        StudyImage[] keys = keys(4);
+        BufferedImage[] images = images(4);
+        for (int i = 0; i < 3; i++)
+            cache.put(keys[i], images[i]);
+        assertSame(images[0], cache.get(keys[0]));
+        cache.put(keys[3], images[3]);
+
+        assertSame(images[0], cache.get(keys[0]));
+        assertNull(cache.get(keys[1]));
+        assertSame(images[2], cache.get(keys[2]));
+        assertSame(images[3], cache.get(keys[3]));
+        assertEquals(3 * SIZE, cache.getSize());
+    }
+
+    /**
+     * Putting images beyond the budget evicts the oldest, and replacing an
+     * image only counts the new one.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void staysWithinItsBudget() {
+        ImageCache cache = new ImageCache(2 * SIZE + SIZE / 2);
+        StudyImage[] keys = keys(3);
+        BufferedImage[] images = images(3);
+        for (int i = 0; i < 3; i++)
+            cache.put(keys[i], images[i]);
+        assertNull(cache.get(keys[0]));
+        assertEquals(2 * SIZE, cache.getSize());
+
+        cache.put(keys[2], images[0]);
+        assertSame(images[0], cache.get(keys[2]));
+        assertEquals(2 * SIZE, cache.getSize());
+    }
+
+    /**
+     * Shrinking the budget evicts until the cache fits, and clearing
+     * empties it.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void shrinksWithItsBudget() {
+        ImageCache cache = new ImageCache(3 * SIZE);
+        StudyImage[] keys = keys(3);
+        BufferedImage[] images = images(3);
+        for (int i = 0; i < 3; i++)
+            cache.put(keys[i], images[i]);
+        cache.setBudget(SIZE);
+
+        assertEquals(SIZE, cache.getBudget());
+        assertEquals(SIZE, cache.getSize());
+        assertNull(cache.get(keys[0]));
+        assertNull(cache.get(keys[1]));
+        assertSame(images[2], cache.get(keys[2]));
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(keys[2]));
+    }
+
+    /**
+     * An image larger than the budget is kept until the next one is put,
+     * so the slice just decoded can always be shown.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void keepsTheImageJustPut() {
+        ImageCache cache = new ImageCache(SIZE / 2);
+        StudyImage[] keys = keys(2);
+        BufferedImage[] images = images(2);
+        cache.put(keys[0], images[0]);
+        assertSame(images[0], cache.get(keys[0]));
+        assertEquals(SIZE, cache.getSize());
+
+        cache.put(keys[1], images[1]);
+        assertNull(cache.get(keys[0]));
+        assertSame(images[1], cache.get(keys[1]));
+        assertEquals(SIZE, cache.getSize());
+    }
+
+    /**
+     * Creates study images to use as keys.
+     * @author Jeffrey Haines
+     */
+    private static StudyImage[] keys(int count) {
+        StudyImage[] keys = new StudyImage[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = new StudyImage((i + 1) + ".jpg", new int[] {10, 10}, (BufferedImage) null);
+        return keys;
+    }
+
+    /**
+     * Creates images of SIZE bytes each.
+     * @author Jeffrey Haines
+     */
+    private static BufferedImage[] images(int count) {
+        BufferedImage[] images = new BufferedImage[count];
+        for (int i = 0; i < count; i++)
+            images[i] = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+        return images;
+    }
+}
@@ -0,0 +1,51 @@
+package medicalimageviewer.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests sizing the volume of a reconstruction.
+ *
+ * @author Jeffrey Haines
+ */
+class ReconstructionTest {
+    /**
+     * Volumes whose voxel count fits an int are counted exactly.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void countsVoxels() {
+        assertEquals(5 * 3 * 4, Reconstruction.voxels(5, 3, 4));
+        assertEquals(1024 * 1024 * 2047, Reconstruction.voxels(1024, 1024, 2047));
+        Reconstruction rec = new Reconstruction(5, 3, 4, null);
+        assertEquals(5 * 3 * 4, rec.vol.capacity());
+    }
+
+    /**
+     * Volumes with more voxels than an int can count are refused with their
+     * dimensions, where the count used to wrap around.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void refusesVolumesTooLargeToIndex() {
+        assertRefused(1024, 1024, 2048);
+        assertRefused(1024, 1024, 4096);
+        assertRefused(65535, 65535, 1);
+    }
+
+    /**
+     * Checks that a volume of the given size cannot be created.
+     * @author Jeffrey Haines
+     */
+    private static void assertRefused(int xDims, int yDims, int zDims) {
+        try {
+            new Reconstruction(xDims, yDims, zDims, null);
+            fail("a " + xDims + "x" + yDims + "x" + zDims + " volume was created");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains(xDims + "x" + yDims + "x" + zDims));
+        }
+    }
+}
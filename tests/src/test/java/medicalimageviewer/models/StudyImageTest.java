@@ -0,0 +1,92 @@
+package medicalimageviewer.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import medicalimageviewer.models.iterator.SingleImageIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests decoding study images on demand.
+ *
+ * @author Jeffrey Haines
+ */
+class StudyImageTest {
+    private static final int ROWS = 3;
+    private static final int COLUMNS = 5;
+
+    @TempDir
+    File dir;
+
+    /**
+     * A lazy image is decoded on first use and then served from the cache,
+     * without reading the file again.
+     * @throws IOException if the slice could not be written
+     * @author Jeffrey Haines
+     */
+    @Test
+    void decodesOnceThenHitsTheCache() throws IOException {
+        File file = new File(dir, "1.acr");
+        Files.write(file.toPath(), AcrFiles.slice(ByteOrder.LITTLE_ENDIAN, ROWS, COLUMNS, 0, true, false));
+        ImageCache cache = new ImageCache(1 << 20);
+        StudyImage image = new StudyImage("1.acr", new int[] {ROWS, COLUMNS}, file, cache);
+        assertEquals(0, cache.getSize());
+
+        BufferedImage decoded = image.getImage();
+        assertEquals(COLUMNS, decoded.getWidth());
+        assertEquals(ROWS, decoded.getHeight());
+        assertEquals(AcrFiles.sample(4, 2, 0), decoded.getRaster().getSample(4, 2, 0));
+        assertSame(decoded, cache.get(image));
+        assertTrue(cache.getSize() > 0);
+
+        Files.delete(file.toPath());
+        assertSame(decoded, image.getImage());
+        assertSame(file, image.getSource());
+    }
+
+    /**
+     * An image held in memory is returned as it is.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void returnsImagesHeldInMemory() {
+        BufferedImage held = new BufferedImage(COLUMNS, ROWS, BufferedImage.TYPE_BYTE_GRAY);
+        StudyImage image = new StudyImage("1.jpg", new int[] {ROWS, COLUMNS}, held);
+        assertSame(held, image.getImage());
+        assertNull(image.getSource());
+    }
+
+    /**
+     * A slice whose file was deleted after the study was opened shows as a
+     * blank image of its resolution, for the image and the iterators alike.
+     * @throws IOException if the study could not be written
+     * @author Jeffrey Haines
+     */
+    @Test
+    void standsInForDeletedSlices() throws IOException {
+        File path = AcrFiles.study(new File(dir, "study"), 3, ROWS, COLUMNS);
+        Study study = new Study(0);
+        assertNotNull(study.open(path), study.getLoadError());
+        Files.delete(new File(path, "2.acr").toPath());
+
+        BufferedImage blank = study.getStudyImages().get(1).getImage();
+        assertNotNull(blank);
+        assertEquals(COLUMNS, blank.getWidth());
+        assertEquals(ROWS, blank.getHeight());
+        assertEquals(0, blank.getRaster().getSample(4, 2, 0));
+
+        BufferedImage[] shown = new SingleImageIterator(1).getImages(study);
+        assertEquals(COLUMNS, shown[0].getWidth());
+        assertEquals(AcrFiles.sample(4, 2, 2),
+                study.getStudyImages().get(2).getImage().getRaster().getSample(4, 2, 0));
+    }
+}
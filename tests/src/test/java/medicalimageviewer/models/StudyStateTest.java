@@ -0,0 +1,185 @@
+package medicalimageviewer.models;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import medicalimageviewer.models.iterator.CorImageIterator;
+import medicalimageviewer.models.iterator.QuadImageIterator;
+import medicalimageviewer.models.iterator.SagImageIterator;
+import medicalimageviewer.models.iterator.SingleImageIterator;
+import medicalimageviewer.models.iterator.StudyImageIterator;
+import medicalimageviewer.models.iterator.WindowImageIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests writing .sdy files, reading them back and migrating the serialized
+ * files of older versions.
+ *
+ * @author Jeffrey Haines
+ */
+class StudyStateTest {
+    private static final int ROWS = 3;
+    private static final int COLUMNS = 5;
+
+    @TempDir
+    File dir;
+
+    /**
+     * A written state reads back with the same mode, iterators, positions
+     * and windows.
+     * @throws IOException if the state could not be written or read
+     * @author Jeffrey Haines
+     */
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        Study study = open("study", 4, ROWS, COLUMNS);
+        ArrayList<StudyImageIterator> iterators = iterators(study);
+        File file = new File(dir, "state.sdy");
+        StudyState.write(file, 2, iterators);
+
+        StudyState state = StudyState.read(file, study);
+        assertEquals(2, state.getMode());
+        assertEquals(iterators.size(), state.getIterators().size());
+        for (int i = 0; i < iterators.size(); i++) {
+            assertEquals(iterators.get(i).getClass(), state.getIterators().get(i).getClass());
+            assertEquals(iterators.get(i).getIndex(), state.getIterators().get(i).getIndex());
+        }
+        WindowImageIterator window = (WindowImageIterator) state.getIterators().get(2);
+        assertEquals(100, window.getMin());
+        assertEquals(3000, window.getMax());
+        assertArrayEquals(StudyState.snapshot(2, iterators),
+                StudyState.snapshot(state.getMode(), state.getIterators()));
+    }
+
+    /**
+     * Snapshots differ when anything write stores differs.
+     * @throws IOException if the study could not be written
+     * @author Jeffrey Haines
+     */
+    @Test
+    void snapshotsFollowWhatIsWritten() throws IOException {
+        Study study = open("study", 4, ROWS, COLUMNS);
+        ArrayList<StudyImageIterator> iterators = iterators(study);
+        int[] saved = StudyState.snapshot(1, iterators);
+        assertArrayEquals(saved, StudyState.snapshot(1, iterators(study)));
+        assertFalse(Arrays.equals(saved, StudyState.snapshot(0, iterators)));
+
+        iterators.get(0).setIndex(3);
+        assertFalse(Arrays.equals(saved, StudyState.snapshot(1, iterators)));
+        iterators.set(2, new WindowImageIterator(0, 100, 2999));
+        assertFalse(Arrays.equals(StudyState.snapshot(1, iterators(study)),
+                StudyState.snapshot(1, iterators)));
+    }
+
+    /**
+     * Files that are neither kind of state file are rejected.
+     * @throws IOException if a file could not be written
+     * @author Jeffrey Haines
+     */
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Study study = open("study", 2, ROWS, COLUMNS);
+        File file = new File(dir, "junk.sdy");
+        Files.write(file.toPath(), "not a study".getBytes());
+        try {
+            StudyState.read(file, study);
+            fail("junk was read as a study state");
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * A serialized state from an older version is read, its sagittal and
+     * coronal iterators are given the positions of the volume, and the file
+     * is rewritten in the current format.
+     * @throws IOException if the state could not be written or read
+     * @author Jeffrey Haines
+     */
+    @Test
+    void migratesSerializedStates() throws IOException {
+        // iterators sized by another study, as older versions got them wrong
+        Study other = open("other", 9, 9, 9);
+        Study study = open("study", 4, ROWS, COLUMNS);
+        ArrayList<StudyImageIterator> legacy = iterators(other);
+        File file = new File(dir, "legacy.sdy");
+        writeSerialized(file, legacy, 1);
+
+        StudyState state = StudyState.read(file, study);
+        assertEquals(1, state.getMode());
+        assertEquals(legacy.size(), state.getIterators().size());
+        assertEquals(COLUMNS, positions(state.getIterators().get(4), study));
+        assertEquals(ROWS, positions(state.getIterators().get(5), study));
+        assertEquals(2, state.getIterators().get(0).getIndex());
+
+        byte[] data = Files.readAllBytes(file.toPath());
+        assertArrayEquals(new byte[] {'M', 'I', 'V', 'S'}, Arrays.copyOf(data, 4));
+        StudyState again = StudyState.read(file, study);
+        assertArrayEquals(StudyState.snapshot(state.getMode(), state.getIterators()),
+                StudyState.snapshot(again.getMode(), again.getIterators()));
+    }
+
+    /**
+     * Writes a state the way older versions of the viewer did.
+     * @author Jeffrey Haines
+     */
+    static void writeSerialized(File file, ArrayList<StudyImageIterator> iterators, int mode)
+            throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file.toPath()))) {
+            out.writeObject(iterators);
+            out.writeObject(mode);
+        }
+    }
+
+    /**
+     * Creates the iterators of a study, each moved away from its start.
+     * @author Jeffrey Haines
+     */
+    static ArrayList<StudyImageIterator> iterators(Study study) {
+        ArrayList<StudyImageIterator> iterators = new ArrayList<>(6);
+        iterators.add(new SingleImageIterator(2));
+        iterators.add(new QuadImageIterator(1));
+        iterators.add(new WindowImageIterator(0, 100, 3000));
+        iterators.add(new SingleImageIterator(0));
+        iterators.add(new SagImageIterator(study, 1));
+        iterators.add(new CorImageIterator(study, 2));
+        return iterators;
+    }
+
+    /**
+     * Counts the positions an iterator moves through, leaving it where it
+     * was.
+     * @author Jeffrey Haines
+     */
+    static int positions(StudyImageIterator it, Study study) {
+        int index = it.getIndex();
+        it.setIndex(0);
+        int positions = 1;
+        while (it.next(study))
+            positions++;
+        it.setIndex(index);
+        return positions;
+    }
+
+    /**
+     * Opens a study of ACR slices written in the temporary directory.
+     * @author Jeffrey Haines
+     */
+    private Study open(String name, int slices, int rows, int columns) throws IOException {
+        Study study = new Study();
+        assertNotNull(study.open(AcrFiles.study(new File(dir, name), slices, rows, columns)),
+                study.getLoadError());
+        assertTrue(study.getLoadFailures().isEmpty());
+        return study;
+    }
+}
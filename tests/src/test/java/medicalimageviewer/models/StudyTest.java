@@ -0,0 +1,152 @@
+package medicalimageviewer.models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import medicalimageviewer.models.iterator.StudyImageIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests opening studies, including ones the viewer cannot show.
+ *
+ * @author Jeffrey Haines
+ */
+class StudyTest {
+    @TempDir
+    File dir;
+
+    /**
+     * A directory without images opens to nothing, with a reason.
+     * @throws IOException if the directory could not be created
+     * @author Jeffrey Haines
+     */
+    @Test
+    void reportsEmptyStudies() throws IOException {
+        File empty = new File(dir, "empty");
+        Files.createDirectories(empty.toPath());
+        Files.write(new File(empty, "notes.txt").toPath(), "no slices".getBytes());
+        Study study = new Study();
+        assertNull(study.open(empty));
+        assertNotNull(study.getLoadError());
+        assertNull(study.getRec());
+    }
+
+    /**
+     * A directory that does not exist opens to nothing, with a reason.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void reportsMissingStudies() {
+        Study study = new Study();
+        assertNull(study.open(new File(dir, "missing")));
+        assertNotNull(study.getLoadError());
+    }
+
+    /**
+     * A study none of whose slices can be read opens to nothing, lists every
+     * slice as failed and leaves no volume file behind.
+     * @throws IOException if a slice could not be written
+     * @author Jeffrey Haines
+     */
+    @Test
+    void reportsStudiesWithoutReadableSlices() throws IOException {
+        File broken = new File(dir, "broken");
+        Files.createDirectories(broken.toPath());
+        Files.write(new File(broken, "1.acr").toPath(), new byte[] {8, 0, 16, 0, 99});
+        Files.write(new File(broken, "2.jpg").toPath(), "not a jpeg".getBytes());
+        Study study = new Study();
+        assertNull(study.open(broken));
+        assertNotNull(study.getLoadError());
+        assertEquals(2, study.getLoadFailures().size());
+        assertEquals(2, broken.list().length);
+    }
+
+    /**
+     * Slices that cannot be read are left out of a study whose other slices
+     * can, and its volume is not kept for the next open.
+     * @throws IOException if a slice could not be written
+     * @author Jeffrey Haines
+     */
+    @Test
+    void leavesOutUnreadableSlices() throws IOException {
+        File partial = AcrFiles.study(new File(dir, "partial"), 3, 4, 4);
+        Files.write(new File(partial, "4.acr").toPath(), new byte[] {8, 0, 16, 0, 99});
+        Study study = new Study();
+        assertNotNull(study.open(partial));
+        assertNull(study.getLoadError());
+        assertEquals(1, study.getLoadFailures().size());
+        assertTrue(study.getLoadFailures().get(0).startsWith("4.acr"));
+        assertEquals(3, study.getStudyImages().size());
+        assertEquals(3, study.getRec().getZDims());
+        assertTrue(!study.getVolumeFile().exists());
+    }
+
+    /**
+     * A study of non-square slices has a volume as wide as a slice has
+     * columns, and its sagittal and coronal panes move through the columns
+     * and rows.
+     * @throws IOException if a slice could not be written
+     * @author Jeffrey Haines
+     */
+    @Test
+    void opensNonSquareStudies() throws IOException {
+        int rows = 3;
+        int columns = 7;
+        File path = AcrFiles.study(new File(dir, "wide"), 4, rows, columns);
+        Study study = new Study();
+        ArrayList<StudyImageIterator> iterators = study.open(path);
+        assertNotNull(iterators, study.getLoadError());
+        Reconstruction rec = study.getRec();
+        assertEquals(columns, rec.getXDims());
+        assertEquals(rows, rec.getYDims());
+        assertEquals(4, rec.getZDims());
+        assertEquals(AcrFiles.sample(6, 2, 3), rec.vol.get((3 * rows + 2) * columns + 6));
+        assertEquals(columns, StudyStateTest.positions(iterators.get(4), study));
+        assertEquals(rows, StudyStateTest.positions(iterators.get(5), study));
+
+        // the second open maps the volume file the first one wrote
+        assertTrue(study.getVolumeFile().isFile());
+        Study again = new Study();
+        assertNotNull(again.open(path));
+        assertEquals(columns, again.getRec().getXDims());
+        assertEquals(rows, again.getRec().getYDims());
+        assertEquals(AcrFiles.sample(6, 2, 3), again.getRec().vol.get((3 * rows + 2) * columns + 6));
+    }
+
+    /**
+     * A study saved by an older version opens where it was left, and its
+     * .sdy file is migrated so the state counts as saved.
+     * @throws IOException if the study could not be written
+     * @author Jeffrey Haines
+     */
+    @Test
+    void opensLegacyStudies() throws IOException {
+        File other = AcrFiles.study(new File(dir, "other"), 9, 9, 9);
+        Study sized = new Study();
+        assertNotNull(sized.open(other));
+        File path = AcrFiles.study(new File(dir, "legacy"), 4, 3, 5);
+        StudyStateTest.writeSerialized(new File(path, "legacy" + StudyState.EXTENSION),
+                StudyStateTest.iterators(sized), 1);
+
+        Study study = new Study();
+        ArrayList<StudyImageIterator> iterators = study.open(path);
+        assertNotNull(iterators, study.getLoadError());
+        assertEquals(1, study.getMode());
+        assertEquals(2, iterators.get(0).getIndex());
+        assertEquals(5, StudyStateTest.positions(iterators.get(4), study));
+        assertEquals(3, StudyStateTest.positions(iterators.get(5), study));
+
+        Study reopened = new Study();
+        ArrayList<StudyImageIterator> again = reopened.open(path);
+        assertNotNull(again, reopened.getLoadError());
+        assertTrue(reopened.checkWithSaved(again));
+        assertEquals(2, again.get(0).getIndex());
+    }
+}
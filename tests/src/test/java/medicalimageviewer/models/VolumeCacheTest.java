@@ -0,0 +1,160 @@
+package medicalimageviewer.models;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests writing volume files and reading them back.
+ *
+ * @author Jeffrey Haines
+ */
+class VolumeCacheTest {
+    private static final int X = 5;
+    private static final int Y = 3;
+    private static final int Z = 4;
+    private static final long KEY = 0x1234_5678_9ABCL;
+
+    @TempDir
+    File dir;
+
+    /**
+     * A committed volume reads back with the same size, depth and voxels,
+     * and no temporary file is left behind.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void readsBackWhatWasWritten() {
+        File file = new File(dir, "study.vol");
+        Reconstruction written = write(file, KEY);
+        Reconstruction read = VolumeCache.read(file, KEY);
+        assertNotNull(read);
+        assertEquals(X, read.getXDims());
+        assertEquals(Y, read.getYDims());
+        assertEquals(Z, read.getZDims());
+        assertEquals(12, read.getBits());
+        assertArrayEquals(voxels(written), voxels(read));
+        assertEquals(AcrFiles.sample(2, 1, 3), read.vol.get((3 * Y + 1) * X + 2));
+        assertArrayEquals(new String[] {"study.vol"}, dir.list());
+    }
+
+    /**
+     * A volume built from other slices, or with a damaged header, is ignored.
+     * @throws IOException if the header could not be changed
+     * @author Jeffrey Haines
+     */
+    @Test
+    void ignoresStaleAndDamagedFiles() throws IOException {
+        File file = new File(dir, "study.vol");
+        write(file, KEY);
+        assertNull(VolumeCache.read(file, KEY + 1));
+        for (int bits : new int[] {0, 17, -1}) {
+            setInt(file, 28, bits);
+            assertNull(VolumeCache.read(file, KEY));
+        }
+        setInt(file, 28, 12);
+        assertNotNull(VolumeCache.read(file, KEY));
+        assertNull(VolumeCache.read(new File(dir, "missing.vol"), KEY));
+    }
+
+    /**
+     * A discarded build leaves the existing volume file as it was, and a
+     * new build replaces it while the old one is still mapped.
+     * @author Jeffrey Haines
+     */
+    @Test
+    void replacesFilesWithoutTouchingMappedOnes() {
+        File file = new File(dir, "study.vol");
+        write(file, KEY);
+        Reconstruction mapped = VolumeCache.read(file, KEY);
+        short[] before = voxels(mapped);
+
+        VolumeCache.Output discarded = VolumeCache.create(file, X, Y, Z);
+        discarded.discard();
+        assertArrayEquals(new String[] {"study.vol"}, dir.list());
+        assertNotNull(VolumeCache.read(file, KEY));
+
+        write(file, KEY + 1);
+        assertNull(VolumeCache.read(file, KEY));
+        assertNotNull(VolumeCache.read(file, KEY + 1));
+        assertArrayEquals(before, voxels(mapped));
+    }
+
+    /**
+     * The key follows the names, sizes and modification times of the slices.
+     * @throws IOException if a slice could not be written
+     * @author Jeffrey Haines
+     */
+    @Test
+    void keyChangesWithTheSlices() throws IOException {
+        File study = AcrFiles.study(new File(dir, "study"), 2, Y, X);
+        File[] files = study.listFiles(Study.IMAGE_FILTER);
+        long key = VolumeCache.key(files);
+        assertEquals(key, VolumeCache.key(study.listFiles(Study.IMAGE_FILTER)));
+        files[0].setLastModified(files[0].lastModified() - 10000);
+        assertNotEquals(key, VolumeCache.key(files));
+    }
+
+    /**
+     * Builds a volume file from slices written by AcrFiles.
+     * @author Jeffrey Haines
+     */
+    private static Reconstruction write(File file, long key) {
+        VolumeCache.Output output = VolumeCache.create(file, X, Y, Z);
+        assertNotNull(output);
+        Reconstruction rec = output.getVolume();
+        boolean[] read = new boolean[Z];
+        for (int z = 0; z < Z; z++) {
+            rec.setSlice(z, slice(z));
+            read[z] = true;
+        }
+        rec.finish(read);
+        output.commit(key);
+        return rec;
+    }
+
+    /**
+     * Creates a 12 bit slice holding the samples of AcrFiles.
+     * @author Jeffrey Haines
+     */
+    static BufferedImage slice(int z) {
+        BufferedImage image = Study.createGrayImage(X, Y, 12);
+        for (int y = 0; y < Y; y++)
+            for (int x = 0; x < X; x++)
+                image.getRaster().setSample(x, y, 0, AcrFiles.sample(x, y, z));
+        return image;
+    }
+
+    /**
+     * Copies out the voxels of a reconstruction.
+     * @author Jeffrey Haines
+     */
+    private static short[] voxels(Reconstruction rec) {
+        short[] voxels = new short[rec.getXDims() * rec.getYDims() * rec.getZDims()];
+        for (int i = 0; i < voxels.length; i++)
+            voxels[i] = rec.vol.get(i);
+        return voxels;
+    }
+
+    /**
+     * Overwrites a little endian int in a file.
+     * @author Jeffrey Haines
+     */
+    private static void setInt(File file, int at, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, value), at);
+        }
+    }
+}
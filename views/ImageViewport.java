@@ -0,0 +1,214 @@
+package medicalimageviewer.views;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import javax.swing.JComponent;
+
+/**
+ * The ImageViewport class shows one image of a pane, scaled to fit the
+ * component while keeping its aspect ratio and centred in it.
+ *
+ * Images whose colour model already matches the screen, such as the RGB
+ * images the renderer draws, are painted as they are. Others, such as grey
+ * slices, would be converted on every paint, so the viewport copies each
+ * new one once into an image compatible with the screen and paints from
+ * that copy. Setting an image only repaints the area covered by the old and
+ * the new image.
+ *
+ * An overlay can be painted over the image at paint time, so marks such as
+ * index lines never change the image and moving them only repaints.
+ *
+ * @author Jeffrey Haines
+ */
+public class ImageViewport extends JComponent {
+    private static final long serialVersionUID = 1L;
+    
+    private BufferedImage image;        // the image shown, or null
+    private BufferedImage compatible;   // screen compatible copy of image, if needed
+    private boolean stale;              // compatible does not hold image yet
+    private Object interpolation = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+    private final Rectangle shown = new Rectangle();    // last painted area
+    private Overlay overlay;            // painted over the image, or null
+
+    /**
+     * Image Viewport.
+     * @author Jeffrey Haines
+     */
+    public ImageViewport() {
+        setOpaque(true);
+    }
+
+    /**
+     * Shows an image. The image may be the one already shown with new
+     * contents, so any screen compatible copy is refreshed before it is
+     * painted.
+     * @param image the image to show, or null to show nothing
+     * @author Jeffrey Haines
+     */
+    public void setImage(BufferedImage image) {
+        this.image = image;
+        this.stale = true;
+        Rectangle dirty = fit(image);
+        if (dirty.isEmpty())
+            dirty.setBounds(shown);
+        else if (!shown.isEmpty())
+            dirty.add(shown);
+        repaint(dirty);
+    }
+
+    /**
+     * Gets the image shown.
+     * @return the image, or null
+     * @author Jeffrey Haines
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Changes what is painted over the image and repaints it.
+     * @param overlay the overlay, or null for none
+     * @author Jeffrey Haines
+     */
+    public void setOverlay(Overlay overlay) {
+        this.overlay = overlay;
+        repaint(shown);
+    }
+
+    /**
+     * Changes how the image is interpolated when it is scaled.
+     * @param interpolation one of the RenderingHints.VALUE_INTERPOLATION
+     *        values
+     * @author Jeffrey Haines
+     */
+    public void setInterpolation(Object interpolation) {
+        this.interpolation = interpolation;
+        repaint(shown);
+    }
+
+    /**
+     * Gets how the image is interpolated when it is scaled.
+     * @return the RenderingHints.VALUE_INTERPOLATION value
+     * @author Jeffrey Haines
+     */
+    public Object getInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * Gets the size of the image, so layouts that honour it show the image
+     * unscaled.
+     * @return the preferred size
+     * @author Jeffrey Haines
+     */
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet() || image == null)
+            return super.getPreferredSize();
+        return new Dimension(image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Paints the background and the scaled image.
+     * @param g the graphics to paint with
+     * @author Jeffrey Haines
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            g.fillRect(0, 0, getWidth(), getHeight());
+        else
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        Rectangle area = fit(image);
+        shown.setBounds(area);
+        if (area.isEmpty())
+            return;
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            g2.drawImage(compatible(), area.x, area.y, area.width, area.height, null);
+            if (overlay != null) {
+                g2.clipRect(area.x, area.y, area.width, area.height);
+                g2.translate(area.x, area.y);
+                g2.scale((double) area.width / image.getWidth(),
+                         (double) area.height / image.getHeight());
+                overlay.paint(g2, image.getWidth(), image.getHeight());
+            }
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Gets the image to paint: the image itself if the screen can draw it
+     * directly, otherwise its screen compatible copy, copying the image into
+     * it if it has changed since it was last painted.
+     * @return the image or its copy
+     * @author Jeffrey Haines
+     */
+    private BufferedImage compatible() {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        ColorModel screen = gc != null ? gc.getColorModel() : null;
+        if (screen == null || screen.equals(image.getColorModel())) {
+            compatible = null;
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        if (compatible == null || compatible.getWidth() != w || compatible.getHeight() != h) {
+            compatible = gc.createCompatibleImage(w, h);
+            stale = true;
+        }
+        if (stale) {
+            Graphics g = compatible.createGraphics();
+            try {
+                g.drawImage(image, 0, 0, null);
+            } finally {
+                g.dispose();
+            }
+            stale = false;
+        }
+        return compatible;
+    }
+
+    /**
+     * Works out where an image is painted: as large as fits the component
+     * without changing its aspect ratio, centred.
+     * @param image the image, or null
+     * @return the area the image covers, empty if there is nothing to paint
+     * @author Jeffrey Haines
+     */
+    private Rectangle fit(BufferedImage image) {
+        if (image == null || getWidth() <= 0 || getHeight() <= 0)
+            return new Rectangle();
+        double scale = Math.min((double) getWidth() / image.getWidth(),
+                                (double) getHeight() / image.getHeight());
+        int w = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int h = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        return new Rectangle((getWidth() - w) / 2, (getHeight() - h) / 2, w, h);
+    }
+
+    /**
+     * Something painted over the image of a viewport.
+     */
+    public interface Overlay {
+        /**
+         * Paints the overlay.
+         * @param g the graphics to paint with, in the coordinates of the
+         *        image, so a unit square covers one pixel of the image
+         * @param width the width of the image
+         * @param height the height of the image
+         * @author Jeffrey Haines
+         */
+        void paint(Graphics2D g, int width, int height);
+    }
+}
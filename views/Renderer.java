@@ -0,0 +1,91 @@
+package medicalimageviewer.views;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * The Renderer class draws the images of the viewer's panes on a background
+ * thread so the event dispatch thread never waits for decoding,
+ * reconstruction or windowing.
+ *
+ * Only the latest request matters: submitting a frame drops every frame that
+ * is still waiting to be drawn. A frame that has started drawing is finished
+ * and published, so the panes keep following the user while they scroll.
+ * Frames are published on the event dispatch thread, and the renderer waits
+ * for the publish before drawing the next frame, so a frame can safely draw
+ * into whichever images are not being shown.
+ *
+ * @author Jeffrey Haines
+ */
+public class Renderer {
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Renderer.
+     * @author Jeffrey Haines
+     */
+    public Renderer() {
+        this.executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "miv-render");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules a frame to be drawn, replacing any frame still waiting.
+     * Never blocks.
+     * @param frame the frame to draw and publish
+     * @author Jeffrey Haines
+     */
+    public void submit(final Frame frame) {
+        executor.getQueue().clear();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    frame.render();
+                    SwingUtilities.invokeAndWait(new Runnable() {
+                        @Override
+                        public void run() {
+                            frame.publish();
+                        }
+                    });
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (InvocationTargetException | RuntimeException ex) {
+                    Logger.getLogger(Renderer.class.getName()).log(Level.WARNING,
+                            "Could not draw frame", ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * A set of pane images to draw and then show.
+     */
+    public interface Frame {
+        /**
+         * Draws the images of the frame. Called on the render thread.
+         * @author Jeffrey Haines
+         */
+        void render();
+
+        /**
+         * Shows the drawn images. Called on the event dispatch thread.
+         * @author Jeffrey Haines
+         */
+        void publish();
+    }
+}
@@ -1,18 +1,25 @@
 package medicalimageviewer.views;
 
 import java.awt.CardLayout;
+import java.awt.Graphics2D;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
-import javax.swing.ImageIcon;
+import java.util.Arrays;
+import java.util.List;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JFormattedTextField;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import medicalimageviewer.memento.IteratorCareTaker;
 import medicalimageviewer.memento.IteratorMemento;
+import medicalimageviewer.models.Prefetcher;
 import medicalimageviewer.models.Study;
 import medicalimageviewer.models.iterator.*;
 import medicalimageviewer.IndexDecorator.IndexDecorator;
@@ -28,6 +35,39 @@ public class ViewerFrame extends javax.swing.JFrame {
     private final IteratorCareTaker careTaker;
     private int index;
     
+    // panes are drawn off the event dispatch thread, into the back images
+    // of each pane while the front images are shown
+    private final Renderer renderer = new Renderer();
+    private final Prefetcher prefetcher = new Prefetcher();
+    private final Buffers singleSet = new Buffers(1);
+    private final Buffers quadSet = new Buffers(4);
+    private final Buffers windowSet = new Buffers(1);
+    
+    // the reconstruction panes show the cached slices, with their index
+    // lines painted over them by the viewports
+    private final Buffers axialSet = new Buffers(1);
+    private final Buffers sagSet = new Buffers(1);
+    private final Buffers corSet = new Buffers(1);
+    
+    // right drag window/level on the window pane; drag events only record
+    // the window and the timer draws it at most once per frame
+    private static final int FRAME_MILLIS = 16;
+    private final Timer windowTimer;
+    private WindowImageIterator dragged;
+    private int dragX;
+    private int dragY;
+    private int dragLevel;
+    private int dragWidth;
+    private int dragStep;
+    private int dragFromMin;    // window when the drag started, for undo
+    private int dragFromMax;
+    private int pendingMin;
+    private int pendingMax;
+    
+    // wheel rotation not yet applied to each iterator, applied once per frame
+    private final double[] wheel = new double[6];
+    private final Timer wheelTimer;
+    
     /**
      * Creates new form MedicalImageViewerFrame
      * @author Jeffrey Haines
@@ -35,59 +75,207 @@ public class ViewerFrame extends javax.swing.JFrame {
     public ViewerFrame() {
         initComponents();
         careTaker = new IteratorCareTaker();
+        windowTimer = new Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                applyWindow();
+            }
+        });
+        windowTimer.setRepeats(false);
+        wheelTimer = new Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                applyWheel();
+            }
+        });
+        wheelTimer.setRepeats(false);
     }
     
     /**
      * Update the Image in the jFrame
-     * Updates the UI with the current contents of the image iterator
+     * Updates the UI with the current contents of the image iterator. The
+     * images are drawn by the renderer and shown once they are finished,
+     * so this never waits for them. A pane is only drawn again when the
+     * version of its iterator differs from that of the image it shows. The
+     * index lines of the reconstruction panes are overlays, so moving them
+     * only repaints the panes.
      * @author Jeffrey Haines
      */
     private void updateImage() {        
-        JLabel[] labels = {jLabel2, jLabel3, jLabel4, jLabel5};
+        final Study shown = study;
+        final ArrayList<StudyImageIterator> its = iterators;
+        final int mode = study.getMode();
+        
+        SingleViewButton.setSelected(mode == 0);
+        QuadViewButton.setSelected(mode == 1);
+        WindowViewButton.setSelected(mode == 2);
+        ReconstructionViewButton.setSelected(mode == 3);
+        ((CardLayout)View.getLayout()).show(View, "card" + mode);
+        
+        final long[] pane = versions(its, mode);
+        final long[] sag = mode == 3 ? versions(its, 4) : null;
+        final long[] cor = mode == 3 ? versions(its, 5) : null;
+        if (mode == 3)
+            decorate(new IndexDecorator(its.get(4).getIndex(), its.get(5).getIndex()));
+        
+        renderer.submit(new Renderer.Frame() {
+            @Override
+            public void render() {
+                switch(mode) 
+                {
+                    case 0: if (singleSet.isDirty(pane)) {
+                                its.get(0).getImages(shown, singleSet.back);
+                                singleSet.drawn = pane;
+                            }
+                            break;
+                    case 1: if (quadSet.isDirty(pane)) {
+                                its.get(1).getImages(shown, quadSet.back);
+                                quadSet.drawn = pane;
+                            }
+                            break;
+                    case 2: if (windowSet.isDirty(pane)) {
+                                its.get(2).getImages(shown, windowSet.back);
+                                windowSet.drawn = pane;
+                            }
+                            break;
+                    case 3: if (axialSet.isDirty(pane)) {
+                                axialSet.back[0] = shown.getRec().getSlice('z', its.get(3).getIndex());
+                                axialSet.drawn = pane;
+                            }
+                            if (sagSet.isDirty(sag)) {
+                                its.get(4).getImages(shown, sagSet.back);
+                                sagSet.drawn = sag;
+                            }
+                            if (corSet.isDirty(cor)) {
+                                its.get(5).getImages(shown, corSet.back);
+                                corSet.drawn = cor;
+                            }
+                            break;
+                }
+            }
+            
+            @Override
+            public void publish() {
+                if (singleSet.isDrawn())
+                    SingleViewport.setImage(singleSet.flip()[0]);
+                if (quadSet.isDrawn()) {
+                    ImageViewport[] quadViewports = {QuadViewport1, QuadViewport2, QuadViewport3, QuadViewport4};
+                    BufferedImage[] quad = quadSet.flip();
+                    for(int i=0; i<4; i++) 
+                        quadViewports[i].setImage(quad[i]);
+                }
+                if (windowSet.isDrawn())
+                    WindowViewport.setImage(windowSet.flip()[0]);
+                if (axialSet.isDrawn())
+                    AxialViewport.setImage(axialSet.flip()[0]);
+                if (sagSet.isDrawn())
+                    SagViewport.setImage(sagSet.flip()[0]);
+                if (corSet.isDrawn())
+                    CorViewport.setImage(corSet.flip()[0]);
+            }
+        });
+        
+        // the axial reconstruction pane is prefetched by the slice cache as
+        // it scrolls, the other panes by what their iterators expect next
+        if (mode == 3)
+            prefetcher.prefetch(shown, its.get(4).getLookahead(shown), its.get(5).getLookahead(shown));
+        else
+            prefetcher.prefetch(shown, its.get(mode).getLookahead(shown));
+    }
+    
+    /**
+     * Versions
+     * Gets the versions of some of the iterators, which identify the images
+     * a pane drawn from them shows
+     * @param its the iterators
+     * @param positions the positions of the iterators in the list
+     * @return the versions, in the order of positions
+     * @author Jeffrey Haines
+     */
+    private static long[] versions(List<StudyImageIterator> its, int... positions) {
+        long[] versions = new long[positions.length];
+        for (int i = 0; i < positions.length; i++)
+            versions[i] = its.get(positions[i]).getVersion();
+        return versions;
+    }
+    
+    /**
+     * Decorate
+     * Paints the index lines over the reconstruction panes: both lines on
+     * the axial pane, the coronal line on the sagittal pane and the sagittal
+     * line on the coronal pane
+     * @param dec the decorator holding the indexes of the lines
+     * @author Jeffrey Haines
+     */
+    private void decorate(final IndexDecorator dec) {
+        AxialViewport.setOverlay(new ImageViewport.Overlay() {
+            @Override
+            public void paint(Graphics2D g, int width, int height) {
+                dec.paint(g, width, height);
+            }
+        });
+        SagViewport.setOverlay(new ImageViewport.Overlay() {
+            @Override
+            public void paint(Graphics2D g, int width, int height) {
+                dec.paintCor(g, width);
+            }
+        });
+        CorViewport.setOverlay(new ImageViewport.Overlay() {
+            @Override
+            public void paint(Graphics2D g, int width, int height) {
+                dec.paintSag(g, height);
+            }
+        });
+    }
+    
+    /**
+     * The images of a pane: the front images are shown and the back images
+     * are drawn by the renderer. Publishing a frame swaps them.
+     */
+    private static class Buffers {
+        BufferedImage[] front;
+        BufferedImage[] back;
+        // versions of the iterators the front images were drawn from, and
+        // of those the back images were drawn from until they are shown
+        long[] shown;
+        long[] drawn;
 
-        switch(study.getMode()) 
-        {
-            case 0: jLabel1.setIcon(new ImageIcon(iterators.get(0).getImages(study)[0]));
-                    SingleViewButton.setSelected(true);
-                    QuadViewButton.setSelected(false);
-                    WindowViewButton.setSelected(false);
-                    ReconstructionViewButton.setSelected(false);
-                    ((CardLayout)View.getLayout()).show(View,"card0");
-                    break;
-                
-            case 1: for(int i=0; i<4; i++) 
-                    {
-                        BufferedImage img = iterators.get(1).getImages(study)[i];
-                        if(img!=null)
-                            labels[i].setIcon(new ImageIcon(iterators.get(1).getImages(study)[i]));
-                        else 
-                            labels[i].setIcon(null);
-                    }
-                    SingleViewButton.setSelected(false);
-                    QuadViewButton.setSelected(true);
-                    WindowViewButton.setSelected(false);
-                    ReconstructionViewButton.setSelected(false);
-                    ((CardLayout)View.getLayout()).show(View,"card1");
-                    break;
-                
-            case 2: jLabel6.setIcon(new ImageIcon(iterators.get(2).getImages(study)[0]));
-                    SingleViewButton.setSelected(false);
-                    QuadViewButton.setSelected(false);
-                    WindowViewButton.setSelected(true);
-                    ReconstructionViewButton.setSelected(false);
-                    ((CardLayout)View.getLayout()).show(View,"card2");
-                    break;
-
-            case 3: IndexDecorator dec = new IndexDecorator(iterators.get(4).getIndex(), iterators.get(5).getIndex());
-                    jLabel7.setIcon(new ImageIcon(dec.draw(study.getRec().construct2D('z', iterators.get(3).getIndex()))));
-                    jLabel8.setIcon(new ImageIcon(dec.drawCor(iterators.get(4).getImages(study)[0])));
-                    jLabel9.setIcon(new ImageIcon(dec.drawSag(iterators.get(5).getImages(study)[0])));
-                    SingleViewButton.setSelected(false);
-                    QuadViewButton.setSelected(false);
-                    WindowViewButton.setSelected(false);
-                    ReconstructionViewButton.setSelected(true);
-                    ((CardLayout)View.getLayout()).show(View,"card3");
-                    break;
+        Buffers(int size) {
+            front = new BufferedImage[size];
+            back = new BufferedImage[size];
+        }
+
+        /**
+         * Tells whether the front images were drawn from other versions.
+         * @param versions the versions of the iterators the pane shows
+         * @return true if the pane has to be drawn again
+         * @author Jeffrey Haines
+         */
+        boolean isDirty(long[] versions) {
+            return !Arrays.equals(versions, shown);
+        }
+
+        /**
+         * Tells whether the back images have been drawn and wait to be shown.
+         * @return true if the images should be flipped
+         * @author Jeffrey Haines
+         */
+        boolean isDrawn() {
+            return drawn != null;
+        }
+
+        /**
+         * Swaps the front and back images once the back images are drawn.
+         * @return the images to show
+         * @author Jeffrey Haines
+         */
+        BufferedImage[] flip() {
+            BufferedImage[] images = back;
+            back = front;
+            front = images;
+            shown = drawn;
+            drawn = null;
+            return images;
         }
     }
 
@@ -116,18 +304,18 @@ public class ViewerFrame extends javax.swing.JFrame {
         NextImageButton = new javax.swing.JButton();
         View = new javax.swing.JPanel();
         SingleImage = new javax.swing.JPanel();
-        jLabel1 = new javax.swing.JLabel();
+        SingleViewport = new medicalimageviewer.views.ImageViewport();
         QuadImage = new javax.swing.JPanel();
-        jLabel2 = new javax.swing.JLabel();
-        jLabel3 = new javax.swing.JLabel();
-        jLabel4 = new javax.swing.JLabel();
-        jLabel5 = new javax.swing.JLabel();
+        QuadViewport1 = new medicalimageviewer.views.ImageViewport();
+        QuadViewport2 = new medicalimageviewer.views.ImageViewport();
+        QuadViewport3 = new medicalimageviewer.views.ImageViewport();
+        QuadViewport4 = new medicalimageviewer.views.ImageViewport();
         WindowImage = new javax.swing.JPanel();
-        jLabel6 = new javax.swing.JLabel();
+        WindowViewport = new medicalimageviewer.views.ImageViewport();
         ReconstructionWindow = new javax.swing.JPanel();
-        jLabel7 = new javax.swing.JLabel();
-        jLabel8 = new javax.swing.JLabel();
-        jLabel9 = new javax.swing.JLabel();
+        AxialViewport = new medicalimageviewer.views.ImageViewport();
+        SagViewport = new medicalimageviewer.views.ImageViewport();
+        CorViewport = new medicalimageviewer.views.ImageViewport();
         MedicalImageViewerMenuBar = new javax.swing.JMenuBar();
         FileMenu = new javax.swing.JMenu();
         OpenStudy = new javax.swing.JMenuItem();
@@ -135,6 +323,7 @@ public class ViewerFrame extends javax.swing.JFrame {
         SaveAsStudy = new javax.swing.JMenuItem();
         MakeDefault = new javax.swing.JMenuItem();
         Undo = new javax.swing.JMenuItem();
+        Redo = new javax.swing.JMenuItem();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.DO_NOTHING_ON_CLOSE);
         setTitle("Medical Image Viewer");
@@ -258,9 +447,7 @@ public class ViewerFrame extends javax.swing.JFrame {
         });
         SingleImage.setLayout(new java.awt.GridLayout(1, 0));
 
-        jLabel1.setToolTipText("");
-        jLabel1.setVerticalAlignment(javax.swing.SwingConstants.TOP);
-        SingleImage.add(jLabel1);
+        SingleImage.add(SingleViewport);
 
         View.add(SingleImage, "card0");
 
@@ -270,10 +457,10 @@ public class ViewerFrame extends javax.swing.JFrame {
             }
         });
         QuadImage.setLayout(new java.awt.GridLayout(2, 2));
-        QuadImage.add(jLabel2);
-        QuadImage.add(jLabel3);
-        QuadImage.add(jLabel4);
-        QuadImage.add(jLabel5);
+        QuadImage.add(QuadViewport1);
+        QuadImage.add(QuadViewport2);
+        QuadImage.add(QuadViewport3);
+        QuadImage.add(QuadViewport4);
 
         View.add(QuadImage, "card1");
 
@@ -284,36 +471,45 @@ public class ViewerFrame extends javax.swing.JFrame {
         });
         WindowImage.setLayout(new java.awt.GridLayout(1, 0));
 
-        jLabel6.setVerticalAlignment(javax.swing.SwingConstants.TOP);
-        WindowImage.add(jLabel6);
+        WindowViewport.addMouseMotionListener(new java.awt.event.MouseMotionAdapter() {
+            public void mouseDragged(java.awt.event.MouseEvent evt) {
+                WindowMouseDragged(evt);
+            }
+        });
+        WindowViewport.addMouseListener(new java.awt.event.MouseAdapter() {
+            public void mousePressed(java.awt.event.MouseEvent evt) {
+                WindowMousePressed(evt);
+            }
+            public void mouseReleased(java.awt.event.MouseEvent evt) {
+                WindowMouseReleased(evt);
+            }
+        });
+        WindowImage.add(WindowViewport);
 
         View.add(WindowImage, "card2");
 
         ReconstructionWindow.setLayout(new java.awt.GridLayout(2, 2));
 
-        jLabel7.setVerticalAlignment(javax.swing.SwingConstants.TOP);
-        jLabel7.addMouseWheelListener(new java.awt.event.MouseWheelListener() {
+        AxialViewport.addMouseWheelListener(new java.awt.event.MouseWheelListener() {
             public void mouseWheelMoved(java.awt.event.MouseWheelEvent evt) {
                 formMouseWheelMoved(evt);
             }
         });
-        ReconstructionWindow.add(jLabel7);
+        ReconstructionWindow.add(AxialViewport);
 
-        jLabel8.setVerticalAlignment(javax.swing.SwingConstants.TOP);
-        jLabel8.addMouseWheelListener(new java.awt.event.MouseWheelListener() {
+        SagViewport.addMouseWheelListener(new java.awt.event.MouseWheelListener() {
             public void mouseWheelMoved(java.awt.event.MouseWheelEvent evt) {
                 SagMouseWheelMoved(evt);
             }
         });
-        ReconstructionWindow.add(jLabel8);
+        ReconstructionWindow.add(SagViewport);
 
-        jLabel9.setVerticalAlignment(javax.swing.SwingConstants.TOP);
-        jLabel9.addMouseWheelListener(new java.awt.event.MouseWheelListener() {
+        CorViewport.addMouseWheelListener(new java.awt.event.MouseWheelListener() {
             public void mouseWheelMoved(java.awt.event.MouseWheelEvent evt) {
                 CorMouseWheelMoved(evt);
             }
         });
-        ReconstructionWindow.add(jLabel9);
+        ReconstructionWindow.add(CorViewport);
 
         View.add(ReconstructionWindow, "card3");
 
@@ -364,6 +560,15 @@ public class ViewerFrame extends javax.swing.JFrame {
         });
         FileMenu.add(Undo);
 
+        Redo.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Y, java.awt.event.InputEvent.CTRL_MASK));
+        Redo.setText("Redo");
+        Redo.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                RedoActionPerformed(evt);
+            }
+        });
+        FileMenu.add(Redo);
+
         MedicalImageViewerMenuBar.add(FileMenu);
 
         setJMenuBar(MedicalImageViewerMenuBar);
@@ -398,10 +603,7 @@ public class ViewerFrame extends javax.swing.JFrame {
      * @author Jeffrey Haines
      */
     private void QuadViewButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_QuadViewButtonActionPerformed
-        createIteratorMomento();
-        iterators.add(1, new QuadImageIterator(index));
-        index = iterators.get(1).getIndex();
-        study.setMode(1);
+        change(1, 1, index, 0, 0);
         updateImage();
     }//GEN-LAST:event_QuadViewButtonActionPerformed
     
@@ -411,9 +613,7 @@ public class ViewerFrame extends javax.swing.JFrame {
      * @author Jeffrey Haines
      */
     private void SingleViewButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_SingleViewButtonActionPerformed
-        createIteratorMomento();
-        iterators.add(0, new SingleImageIterator(index));
-        study.setMode(0);
+        change(0, 0, index, 0, 0);
         updateImage(); 
     }//GEN-LAST:event_SingleViewButtonActionPerformed
     
@@ -425,11 +625,15 @@ public class ViewerFrame extends javax.swing.JFrame {
     private void OpenStudyButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_OpenStudyButtonActionPerformed
         File path = getStudyPath();
         if(path != null){
-            study = new Study();
-            iterators = study.open(path);
-            study.save(iterators);
-            if (iterators != null) 
+            Study opened = new Study();
+            ArrayList<StudyImageIterator> openedIterators = opened.open(path);
+            reportLoadFailures(opened);
+            if (openedIterators != null) 
             {
+                study = opened;
+                iterators = openedIterators;
+                careTaker.clear();
+                study.save(iterators);
                 index = iterators.get(0).getIndex();
                 updateImage();
             }
@@ -477,30 +681,8 @@ public class ViewerFrame extends javax.swing.JFrame {
      * @author Jeffrey Haines
      */
     private void formMouseWheelMoved(java.awt.event.MouseWheelEvent evt) {//GEN-FIRST:event_formMouseWheelMoved
-        int notches = evt.getWheelRotation();
-        if (notches < 0) 
-        {
-            if(study.getMode() == 3)
-                getPrev(iterators.get(3));
-            else if(study.getMode() == 2)
-                getPrev(iterators.get(2));
-            else if(study.getMode() == 1)
-                getPrev(iterators.get(1));
-            else if(study.getMode() == 0)
-                getPrev(iterators.get(0));
-        }
-        else if (notches > 0) 
-        {
-            if(study.getMode() == 3)
-                getNext(iterators.get(3));
-            else if(study.getMode() == 2)
-                getNext(iterators.get(2));
-            else if(study.getMode() == 1)
-                getNext(iterators.get(1));
-            else if(study.getMode() == 0)
-                getNext(iterators.get(0));
-        }
-        updateImage();
+        if (study != null)
+            scroll(study.getMode(), evt);
     }//GEN-LAST:event_formMouseWheelMoved
    
     /**
@@ -526,6 +708,10 @@ public class ViewerFrame extends javax.swing.JFrame {
             this.iterators = study.open(file);
         else 
             this.iterators = study.open(getStudyPath());
+        careTaker.clear();
+        reportLoadFailures(study);
+        if (iterators == null)
+            return;
         index = iterators.get(0).getIndex();
         study.save(iterators);
         
@@ -584,18 +770,22 @@ public class ViewerFrame extends javax.swing.JFrame {
      * @author Jeffrey Haines
      */
     private void WindowViewButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_WindowViewButtonActionPerformed
-        createIteratorMomento();
-        JTextField min = new JTextField();
-        JTextField max = new JTextField();
+        int top = study.getRec().getMaxValue();
+        JTextField min = new JTextField("0");
+        JTextField max = new JTextField(Integer.toString(top));
+        if (iterators.get(2) instanceof WindowImageIterator) {
+            WindowImageIterator current = (WindowImageIterator) iterators.get(2);
+            min.setText(Integer.toString(Math.min(current.getMin(), top)));
+            max.setText(Integer.toString(Math.min(current.getMax(), top)));
+        }
         final JComponent[] inputs = new JComponent[] {
-                        new JLabel("Minimum"),
+                        new JLabel("Minimum (0 - " + top + ")"),
                         min,
-                        new JLabel("Maximum"),
+                        new JLabel("Maximum (0 - " + top + ")"),
                         max
         };
         JOptionPane.showMessageDialog(null, inputs, "Enter window values", JOptionPane.PLAIN_MESSAGE);
-        iterators.add(2, new WindowImageIterator(index, Integer.parseInt(min.getText()), Integer.parseInt(max.getText())));
-        study.setMode(2);
+        change(2, 2, index, Integer.parseInt(min.getText()), Integer.parseInt(max.getText()));
         updateImage();
     }//GEN-LAST:event_WindowViewButtonActionPerformed
 
@@ -605,10 +795,7 @@ public class ViewerFrame extends javax.swing.JFrame {
      * @author Jeffrey Haines
      */
     private void ReconstructionViewButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_ReconstructionViewButtonActionPerformed
-        iterators.add(3, new SingleImageIterator(index));
-        iterators.add(4, new SagImageIterator(study, iterators.get(4).getIndex()));
-        iterators.add(5, new CorImageIterator(study, iterators.get(5).getIndex()));
-        study.setMode(3);
+        change(3, 3, index, 0, 0);
         updateImage();
     }//GEN-LAST:event_ReconstructionViewButtonActionPerformed
 
@@ -618,12 +805,8 @@ public class ViewerFrame extends javax.swing.JFrame {
      * @author Jeffrey Haines
      */
     private void SagMouseWheelMoved(java.awt.event.MouseWheelEvent evt) {//GEN-FIRST:event_SagMouseWheelMoved
-        int notches = evt.getWheelRotation();
-        if (notches < 0) 
-            getPrev(iterators.get(4));
-        else if (notches > 0) 
-            getNext(iterators.get(4));
-        updateImage();
+        if (study != null)
+            scroll(4, evt);
     }//GEN-LAST:event_SagMouseWheelMoved
 
     /**
@@ -632,24 +815,148 @@ public class ViewerFrame extends javax.swing.JFrame {
      * @author Jeffrey Haines
      */
     private void CorMouseWheelMoved(java.awt.event.MouseWheelEvent evt) {//GEN-FIRST:event_CorMouseWheelMoved
-        int notches = evt.getWheelRotation();
-        if (notches < 0) 
-            getPrev(iterators.get(5));
-        else if (notches > 0) 
-            getNext(iterators.get(5));
-        updateImage();
+        if (study != null)
+            scroll(5, evt);
     }//GEN-LAST:event_CorMouseWheelMoved
 
+    /**
+     * Scroll
+     * Adds the rotation of a wheel event to an iterator. The iterator is
+     * moved by the net rotation once per frame, so a burst of events or a
+     * fast flick draws only the slice it ends on.
+     * @param it the position of the iterator in the iterator list
+     * @param evt the mouse wheel event
+     * @author Jeffrey Haines
+     */
+    private void scroll(int it, java.awt.event.MouseWheelEvent evt) {
+        wheel[it] += evt.getPreciseWheelRotation();
+        if (!wheelTimer.isRunning())
+            wheelTimer.start();
+    }
+    
+    /**
+     * Apply Wheel
+     * Moves each iterator by the whole steps of wheel rotation it has
+     * gathered, keeping any fraction of a step for the next frame, and
+     * draws the result once
+     * @author Jeffrey Haines
+     */
+    private void applyWheel() {
+        boolean moved = false;
+        for (int i = 0; i < wheel.length; i++) {
+            int steps = (int) wheel[i];
+            if (steps == 0)
+                continue;
+            wheel[i] -= steps;
+            StudyImageIterator it = iterators.get(i);
+            for (; steps > 0 && it.next(study); steps--)
+                moved = true;
+            for (; steps < 0 && it.prev(); steps++)
+                moved = true;
+            index = it.getIndex();
+        }
+        if (moved)
+            updateImage();
+    }
+
+    /**
+     * Window Mouse Pressed
+     * Starts a window/level drag when the right button is pressed
+     * @param evt the window pane mouse event
+     * @author Jeffrey Haines
+     */
+    private void WindowMousePressed(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_WindowMousePressed
+        if (!SwingUtilities.isRightMouseButton(evt) || study == null 
+                || !(iterators.get(2) instanceof WindowImageIterator))
+            return;
+        int top = study.getRec().getMaxValue();
+        dragged = (WindowImageIterator) iterators.get(2);
+        dragFromMin = dragged.getMin();
+        dragFromMax = dragged.getMax();
+        pendingMin = Math.max(0, Math.min(dragged.getMin(), top));
+        pendingMax = Math.max(pendingMin, Math.min(dragged.getMax(), top));
+        dragWidth = pendingMax - pendingMin;
+        dragLevel = pendingMin + dragWidth / 2;
+        dragStep = Math.max(1, (top + 1) / 512);
+        dragX = evt.getX();
+        dragY = evt.getY();
+    }//GEN-LAST:event_WindowMousePressed
+
+    /**
+     * Window Mouse Dragged
+     * Dragging right widens the window and dragging up raises its level.
+     * The new window is drawn on the next frame.
+     * @param evt the window pane mouse event
+     * @author Jeffrey Haines
+     */
+    private void WindowMouseDragged(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_WindowMouseDragged
+        if (dragged == null)
+            return;
+        int width = Math.max(1, dragWidth + (evt.getX() - dragX) * dragStep);
+        int level = dragLevel - (evt.getY() - dragY) * dragStep;
+        pendingMin = level - width / 2;
+        pendingMax = pendingMin + width;
+        if (!windowTimer.isRunning())
+            windowTimer.start();
+    }//GEN-LAST:event_WindowMouseDragged
+
+    /**
+     * Window Mouse Released
+     * Ends a window/level drag, drawing the final window
+     * @param evt the window pane mouse event
+     * @author Jeffrey Haines
+     */
+    private void WindowMouseReleased(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_WindowMouseReleased
+        if (dragged == null || !SwingUtilities.isRightMouseButton(evt))
+            return;
+        windowTimer.stop();
+        applyWindow();
+        if (dragged.getMin() != dragFromMin || dragged.getMax() != dragFromMax)
+            careTaker.push(new IteratorMemento(2, study.getMode(), dragged.getIndex(), 
+                    dragFromMin, dragFromMax, study.getMode(), dragged.getIndex(), 
+                    dragged.getMin(), dragged.getMax()));
+        dragged = null;
+    }//GEN-LAST:event_WindowMouseReleased
+    
+    /**
+     * Apply Window
+     * Draws the window pane with the latest window from the drag
+     * @author Jeffrey Haines
+     */
+    private void applyWindow() {
+        if (dragged == null)
+            return;
+        dragged.setWindow(pendingMin, pendingMax);
+        if (study.getMode() == 2 && iterators.get(2) == dragged)
+            updateImage();
+    }
+
     /**
      * Undo Action Performed
      * @param evt the undo action event
      * @author Jeffrey Haines
      */
     private void UndoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_UndoActionPerformed
-        iterators = setIteratorMomento();
-        updateImage();
+        IteratorMemento m = careTaker.undo();
+        if (m != null) {
+            restore(m, false);
+            updateImage();
+        }
     }//GEN-LAST:event_UndoActionPerformed
 
+    /**
+     * Redo Action Performed
+     * @param evt the redo action event
+     * @author Jeffrey Haines
+     */
+    private void RedoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_RedoActionPerformed
+        IteratorMemento m = careTaker.redo();
+        if (m != null) {
+            restore(m, true);
+            updateImage();
+        }
+    }//GEN-LAST:event_RedoActionPerformed
+
     /**
      * Get Study Path
      * @return the studies file path
@@ -664,6 +971,33 @@ public class ViewerFrame extends javax.swing.JFrame {
         return null;
     }
     
+    /**
+     * Report Load Failures
+     * Tells the user which slices of the study could not be read, and why
+     * the study could not be opened at all if that is the case
+     * @param opened the study that was just opened
+     * @author Jeffrey Haines
+     */
+    private void reportLoadFailures(Study opened) {
+        List<String> failures = opened.getLoadFailures();
+        String error = opened.getLoadError();
+        if (failures.isEmpty() && error == null)
+            return;
+        StringBuilder message = new StringBuilder();
+        if (error != null)
+            message.append("The study could not be opened. ").append(error).append('.');
+        if (!failures.isEmpty()) {
+            if (error != null)
+                message.append('\n');
+            message.append("The following images could not be read:");
+            for (String failure : failures)
+                message.append('\n').append(failure);
+        }
+        JOptionPane.showMessageDialog(this, message.toString(), 
+                "Study " + opened.getName(), 
+                error != null ? JOptionPane.ERROR_MESSAGE : JOptionPane.WARNING_MESSAGE);
+    }
+    
     /**
      * Save Study At Path
      * @author Jeffrey Haines
@@ -696,25 +1030,67 @@ public class ViewerFrame extends javax.swing.JFrame {
     }
     
     /**
-     * Create Iterator Memento
+     * Change
+     * Moves one iterator and switches the view mode, recording the change
+     * so it can be undone
+     * @param mode the new view mode
+     * @param slot the position of the iterator in the iterator list
+     * @param to the new index of the iterator
+     * @param min the new window minimum, if it is a window iterator
+     * @param max the new window maximum, if it is a window iterator
      * @author Jeffrey Haines
      */
-    private void createIteratorMomento() {
-        careTaker.push(new IteratorMemento(iterators, study.getMode()));
+    private void change(int mode, int slot, int to, int min, int max) {
+        StudyImageIterator it = iterators.get(slot);
+        int fromMode = study.getMode();
+        int from = it.getIndex();
+        int fromMin = 0, fromMax = 0;
+        if (it instanceof WindowImageIterator) {
+            fromMin = ((WindowImageIterator) it).getMin();
+            fromMax = ((WindowImageIterator) it).getMax();
+        }
+        apply(mode, slot, to, min, max);
+        careTaker.push(new IteratorMemento(slot, fromMode, from, fromMin, fromMax, 
+                    mode, it.getIndex(), min, max));
     }
     
     /**
-     * Set Iterator Memento
-     * @return the memento object to be sent to care taker
+     * Restore
+     * Puts the view back as it was before or after a recorded change
+     * @param m the change
+     * @param after true to restore the state after the change, false for before
      * @author Jeffrey Haines
      */
-    private ArrayList<StudyImageIterator> setIteratorMomento() {
-        IteratorMemento m = careTaker.pop();
-        study.setMode(m.getMode());
-        return m.getIterator();
+    private void restore(IteratorMemento m, boolean after) {
+        apply(m.getMode(after), m.getSlot(), m.getIndex(after), m.getMin(after), m.getMax(after));
+    }
+    
+    /**
+     * Apply
+     * Moves one iterator and switches the view mode
+     * @param mode the view mode
+     * @param slot the position of the iterator in the iterator list
+     * @param to the index of the iterator
+     * @param min the window minimum, if it is a window iterator
+     * @param max the window maximum, if it is a window iterator
+     * @author Jeffrey Haines
+     */
+    private void apply(int mode, int slot, int to, int min, int max) {
+        StudyImageIterator it = iterators.get(slot);
+        if (it.getIndex() != to)
+            it.setIndex(to);
+        if (it instanceof WindowImageIterator) {
+            WindowImageIterator window = (WindowImageIterator) it;
+            if (window.getMin() != min || window.getMax() != max)
+                window.setWindow(min, max);
+        }
+        study.setMode(mode);
+        index = it.getIndex();
     }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private medicalimageviewer.views.ImageViewport AxialViewport;
+    private medicalimageviewer.views.ImageViewport CorViewport;
     private javax.swing.JMenu FileMenu;
     private javax.swing.ButtonGroup IteratorGroup;
     private javax.swing.JMenuItem MakeDefault;
@@ -726,28 +1102,27 @@ public class ViewerFrame extends javax.swing.JFrame {
     private javax.swing.JButton PrevImageButton;
     private javax.swing.JPanel QuadImage;
     private javax.swing.JToggleButton QuadViewButton;
+    private medicalimageviewer.views.ImageViewport QuadViewport1;
+    private medicalimageviewer.views.ImageViewport QuadViewport2;
+    private medicalimageviewer.views.ImageViewport QuadViewport3;
+    private medicalimageviewer.views.ImageViewport QuadViewport4;
     private javax.swing.JToggleButton ReconstructionViewButton;
     private javax.swing.JPanel ReconstructionWindow;
+    private javax.swing.JMenuItem Redo;
+    private medicalimageviewer.views.ImageViewport SagViewport;
     private javax.swing.JMenuItem SaveAsStudy;
     private javax.swing.JMenuItem SaveStudy;
     private javax.swing.JButton SaveStudyButton;
     private javax.swing.JPanel SingleImage;
     private javax.swing.JToggleButton SingleViewButton;
+    private medicalimageviewer.views.ImageViewport SingleViewport;
     private javax.swing.ButtonGroup SystemGroup;
     private javax.swing.JMenuItem Undo;
     private javax.swing.JPanel View;
     private javax.swing.ButtonGroup ViewGroup;
     private javax.swing.JPanel WindowImage;
     private javax.swing.JToggleButton WindowViewButton;
-    private javax.swing.JLabel jLabel1;
-    private javax.swing.JLabel jLabel2;
-    private javax.swing.JLabel jLabel3;
-    private javax.swing.JLabel jLabel4;
-    private javax.swing.JLabel jLabel5;
-    private javax.swing.JLabel jLabel6;
-    private javax.swing.JLabel jLabel7;
-    private javax.swing.JLabel jLabel8;
-    private javax.swing.JLabel jLabel9;
+    private medicalimageviewer.views.ImageViewport WindowViewport;
     private javax.swing.JToolBar.Separator jSeparator1;
     private javax.swing.JToolBar.Separator jSeparator2;
     // End of variables declaration//GEN-END:variables